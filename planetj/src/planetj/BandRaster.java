@@ -0,0 +1,52 @@
+package planetj;
+
+/* The rows from..from+rows.height() of a raster, for a process that */
+/* renders one band of a map; the rest of the map is not stored. */
+
+public class BandRaster implements IRaster
+{
+	IRaster rows;
+	int from, h;
+
+	public BandRaster(IRaster rows, int from, int h)
+	{
+		this.rows = rows;
+		this.from = from;
+		this.h = h;
+	}
+
+	public int width()
+	{
+		return rows.width();
+	}
+
+	public int height()
+	{
+		return h;
+	}
+
+	public int get(int i, int j)
+	{
+		return rows.get(i, j-from);
+	}
+
+	public void set(int i, int j, int v)
+	{
+		rows.set(i, j-from, v);
+	}
+
+	public void read(int i, int j, int c[], int off, int n)
+	{
+		rows.read(i, j-from, c, off, n);
+	}
+
+	public void write(int i, int j, int c[], int off, int n)
+	{
+		rows.write(i, j-from, c, off, n);
+	}
+
+	public void close()
+	{
+		rows.close();
+	}
+}
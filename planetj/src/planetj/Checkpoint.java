@@ -0,0 +1,224 @@
+package planetj;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/* Keeps the rows rendered so far in a file, so a render that dies can */
+/* pick up where it was, and so a map can be rendered in bands of rows */
+/* by separate processes and merged afterwards. */
+
+/* The file starts with the render parameters and then gets a batch of */
+/* finished rows appended every so often: the rows, the latitude range */
+/* seen so far and the deflated colours, shades and heights. A batch cut */
+/* short by a crash is dropped on resume, so the map only loses what was */
+/* rendered since the last batch. Pixels do not depend on the order they */
+/* are rendered in, so resumed and merged maps come out the same as one */
+/* rendered in one go. */
+
+public class Checkpoint
+{
+	static final String MAGIC = "planetj checkpoint 2";
+
+	File file;
+	String parameters;
+	long interval, last;
+	int from, to, saved;
+
+	/* rows from (inclusive) to to (exclusive) are rendered into file */
+	public Checkpoint(File file, String parameters, long interval, int from, int to)
+	{
+		this.file = file;
+		this.parameters = parameters;
+		this.interval = interval;
+		this.from = from;
+		this.to = to;
+	}
+
+	/* loads what the file has into p and returns the first row to render */
+	public int resume(PlanetJ p)
+	{
+		last = System.currentTimeMillis();
+		saved = from;
+		if (!file.exists() || file.length()==0) return saved;
+
+		long good = read(p, from, null);
+
+		/* drop the unfinished batch so new ones follow the last good one */
+		try
+		{
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try
+			{
+				raf.setLength(good);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot truncate checkpoint file: "+file, e);
+		}
+		return saved;
+	}
+
+	/* loads the rows of all files into p, which must cover the whole map */
+	public static void merge(PlanetJ p, String parameters, String files[])
+	{
+		boolean done[] = new boolean[p.Height];
+
+		for (int k=0; k<files.length; k++)
+			new Checkpoint(new File(files[k]), parameters, 0, 0, p.Height).read(p, -1, done);
+
+		for (int j=0; j<p.Height; j++)
+			if (!done[j])
+				throw new IllegalArgumentException("Row "+j+" is in none of the merged files");
+	}
+
+	/* reads batches that follow on from row start (any row if -1), */
+	/* marks their rows in done[] if given and returns where they end */
+	long read(PlanetJ p, int start, boolean done[])
+	{
+		long good = 0;
+		saved = start;
+		try
+		{
+			/* not buffered, so the position of fis is where in has got to */
+			FileInputStream fis = new FileInputStream(file);
+			DataInputStream in = new DataInputStream(fis);
+			try
+			{
+				if (!MAGIC.equals(in.readUTF()) || !parameters.equals(in.readUTF()))
+					throw new IllegalArgumentException("Checkpoint is for another render: "+file);
+				good = fis.getChannel().position();
+
+				try
+				{
+					while (true)
+					{
+						int j0 = in.readInt(), j1 = in.readInt();
+						double ymin = in.readDouble(), ymax = in.readDouble();
+						byte data[] = new byte[in.readInt()];
+						in.readFully(data);
+
+						if (saved>=0 && j0!=saved) break;
+						readRows(new InflaterInputStream(new ByteArrayInputStream(data)), p, j0, j1);
+						if (ymin<p.ymin) p.ymin = ymin;
+						if (ymax>p.ymax) p.ymax = ymax;
+						if (done!=null)
+							for (int j=j0; j<j1; j++) done[j] = true;
+						saved = j1;
+						good = fis.getChannel().position();
+					}
+				}
+				catch (EOFException e)
+				{
+					/* a batch that was not finished */
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot read checkpoint file: "+file, e);
+		}
+		return good;
+	}
+
+	/* called after each row; appends the new rows when the interval is up */
+	public void row(PlanetJ p, int j)
+	{
+		if (j+1<to && System.currentTimeMillis()-last<interval) return;
+		flush(p, j+1);
+	}
+
+	/* appends the rows rendered since the last batch, up to end (exclusive) */
+	public void flush(PlanetJ p, int end)
+	{
+		if (end<=saved) return;
+
+		try
+		{
+			boolean fresh = !file.exists() || file.length()==0;
+			FileOutputStream fos = new FileOutputStream(file, true);
+			try
+			{
+				DataOutputStream out = new DataOutputStream(fos);
+				if (fresh)
+				{
+					out.writeUTF(MAGIC);
+					out.writeUTF(parameters);
+				}
+
+				ByteArrayOutputStream data = new ByteArrayOutputStream();
+				Deflater deflater = new Deflater();
+				DeflaterOutputStream z = new DeflaterOutputStream(data, deflater);
+				writeRows(z, p, saved, end);
+				z.finish();
+				deflater.end();
+
+				out.writeInt(saved);
+				out.writeInt(end);
+				out.writeDouble(p.ymin);
+				out.writeDouble(p.ymax);
+				out.writeInt(data.size());
+				data.writeTo(out);
+				out.flush();
+				fos.getFD().sync();
+			}
+			finally
+			{
+				fos.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot write checkpoint file: "+file, e);
+		}
+		saved = end;
+		last = System.currentTimeMillis();
+	}
+
+	static void writeRows(DeflaterOutputStream z, PlanetJ p, int from, int to) throws IOException
+	{
+		DataOutputStream out = new DataOutputStream(new BufferedOutputStream(z, 1<<16));
+		for (int j=from; j<to; j++)
+			for (int i=0; i<p.Width; i++)
+			{
+				out.writeByte(p.col.get(i, j));
+				out.writeByte(p.shades.get(i, j));
+				out.writeInt(p.heights.get(i, j));
+			}
+		out.flush();
+	}
+
+	static void readRows(InputStream z, PlanetJ p, int from, int to) throws IOException
+	{
+		DataInputStream in = new DataInputStream(new BufferedInputStream(z, 1<<16));
+		for (int j=from; j<to; j++)
+			for (int i=0; i<p.Width; i++)
+			{
+				p.col.set(i, j, in.readUnsignedByte());
+				p.shades.set(i, j, in.readUnsignedByte());
+				p.heights.set(i, j, in.readInt());
+			}
+	}
+}
@@ -0,0 +1,106 @@
+package planetj;
+
+/* alt2color() compiled into a table of altitude against latitude. */
+
+/* The colour only depends on the altitude and, with latitude colours, on */
+/* the distance from the equator, and it never decreases (in the order sea, */
+/* green, brown, grey, white) when either of them grows. So if the four */
+/* corners of a cell agree, the whole cell has that colour. Cells where the */
+/* corners disagree are marked and fall back to alt2color(), so the table */
+/* gives exactly the same colours, just faster. */
+
+public class ColorTable
+{
+	public static final double MIN = -0.25, MAX = 0.25;
+	public static final int STEPS = 1024;
+	public static final int LATS = 64;
+
+	static final int EXACT = -1;
+
+	PlanetJ planet;
+	int lats;
+	double step;
+	short table[];
+
+	/* at or below (above) these altitudes the colour no longer changes */
+	public double below, above;
+
+	public ColorTable(PlanetJ p)
+	{
+		planet = p;
+		lats = (p.latitudeColors ? LATS : 1);
+		step = (MAX-MIN)/STEPS;
+		table = new short[lats*STEPS];
+
+		/* widen cells a little so rounding in color() cannot leave them */
+		double da = step*1e-3, dy = 1e-3/lats;
+
+		for (int l=0; l<lats; l++)
+		{
+			double y0 = Math.max(0.0, (double)l/lats-dy);
+			double y1 = Math.min(1.0, (double)(l+1)/lats+dy);
+
+			for (int k=0; k<STEPS; k++)
+			{
+				double a0 = MIN+k*step-da;
+				double a1 = MIN+(k+1)*step+da;
+				int c = p.alt2color(a0, 0, y0, 0);
+
+				if ((a0<=0.0 && a1>0.0) ||
+						c!=p.alt2color(a1, 0, y0, 0) ||
+						c!=p.alt2color(a0, 0, y1, 0) ||
+						c!=p.alt2color(a1, 0, y1, 0))
+					c = EXACT;
+				table[l*STEPS+k] = (short)c;
+			}
+		}
+
+		below = settle(-1.0, 1.0);
+		above = settle(1.0, -1.0);
+	}
+
+	/* walks from one end of the altitudes towards the other as long as the */
+	/* colour at the equator and at the poles stays what it is at the end */
+	double settle(double from, double to)
+	{
+		double da = (to>from ? step : -step)/4;
+		int c = planet.alt2color(from, 0, 0, 0);
+
+		if (c!=planet.alt2color(from, 0, 1, 0))
+			return (to>from ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY);
+
+		double a = from;
+		while ((to>from ? a+da<to : a+da>to) &&
+				planet.alt2color(a+da, 0, 0, 0)==c && planet.alt2color(a+da, 0, 1, 0)==c)
+			a += da;
+		return a;
+	}
+
+	public int color(double alt, double y)
+	{
+		double a = (alt-MIN)/step;
+		double ay = Math.abs(y);
+
+		if (a>=0.0 && a<STEPS && ay<=1.0)
+		{
+			int l = 0;
+			if (lats>1)
+			{
+				l = (int)(ay*lats);
+				if (l>=lats) l = lats-1;
+			}
+			int c = table[l*STEPS+(int)a];
+			if (c!=EXACT) return c;
+		}
+		return planet.alt2color(alt, 0, y, 0);
+	}
+
+	/* share of the table that needs no fallback */
+	public double coverage()
+	{
+		int n = 0;
+		for (int k=0; k<table.length; k++)
+			if (table[k]!=EXACT) n++;
+		return (double)n/table.length;
+	}
+}
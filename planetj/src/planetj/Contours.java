@@ -0,0 +1,520 @@
+package planetj;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Vector;
+
+/* Traces coastlines and elevation contours as polylines. */
+
+/* Marching squares over the elevation layer: each cell of four pixels */
+/* gives up to two segments per level, between points interpolated on the */
+/* edges where the level is crossed (a saddle is settled by the average */
+/* of the corners). Segments are joined into lines by the edge they meet */
+/* on. The rows are cut into bands, one per thread, and each band reads */
+/* its rows a strip at a time. Once a row of cells is done, only lines */
+/* that end on its lower edge can still grow, so every other line is */
+/* simplified (Douglas-Peucker, tolerance in pixels) and written out at */
+/* once: memory holds one strip and the lines crossing it, whatever the */
+/* size of the map. Lines that end on the edge between two bands are */
+/* joined once all bands are done. Cells with a background corner are */
+/* skipped, so lines end at the limb. Level 0 is the coastline. */
+
+/* Points are longitude and latitude in degrees, from the unit vectors */
+/* of the pixels either side of the crossing. Lines are not cut where */
+/* they cross the antimeridian. A NAME ending in .json or .geojson is */
+/* written as a GeoJSON FeatureCollection of LineStrings with the level */
+/* as a property; any other as "PJCL", the number of levels and the levels */
+/* (doubles), then per line the index of its level, the number of points */
+/* and the points (longitude, latitude as floats), big-endian, with a */
+/* level of -1 at the end. */
+
+public class Contours
+{
+	static final int STRIP = 1<<22; /* pixels read per strip */
+
+	PlanetJ planet;
+	Geometry geometry;
+	IRaster elevation;
+	double levels[];
+	double tolerance;
+	int width, height;
+	Sink sink;
+
+	public static void write(PlanetJ p, String f, double levels[], double tolerance)
+	{
+		if (p.layerData==null)
+		{
+			throw new IllegalStateException("Contours are traced on the elevation layer, which was not kept");
+		}
+		String l = f.toLowerCase();
+		Sink sink = (l.endsWith(".json") || l.endsWith(".geojson") ? new GeoJson(f, levels) : new Binary(f, levels));
+		try
+		{
+			new Contours(p, levels, tolerance, sink).run();
+		}
+		finally
+		{
+			sink.close();
+		}
+	}
+
+	Contours(PlanetJ p, double levels[], double tolerance, Sink sink)
+	{
+		planet = p;
+		geometry = Geometry.get(p);
+		elevation = p.layerData.elevation;
+		this.levels = levels;
+		this.tolerance = tolerance;
+		this.sink = sink;
+		width = p.Width;
+		height = p.Height;
+	}
+
+	/* a line as it grows from both ends */
+	static class Line
+	{
+		int level;
+		long head, tail; /* keys of the edges the ends are on */
+		double pts[] = new double[16]; /* x,y in pixels, longitude, latitude */
+		int from = 8, to = 8;
+
+		int size()
+		{
+			return (to-from)/4;
+		}
+
+		void add(boolean atTail, double q[])
+		{
+			if (atTail ? to+4>pts.length : from<4)
+			{
+				/* room on both sides again */
+				int n = to-from;
+				double p[] = new double[2*n+32];
+				int at = (p.length-n)/2/4*4;
+				System.arraycopy(pts, from, p, at, n);
+				pts = p;
+				from = at;
+				to = at+n;
+			}
+			if (atTail)
+			{
+				System.arraycopy(q, 0, pts, to, 4);
+				to += 4;
+			}
+			else
+			{
+				from -= 4;
+				System.arraycopy(q, 0, pts, from, 4);
+			}
+		}
+
+		void reverse()
+		{
+			for (int a=from, b=to-4; a<b; a+=4, b-=4)
+				for (int q=0; q<4; q++)
+				{
+					double t = pts[a+q]; pts[a+q] = pts[b+q]; pts[b+q] = t;
+				}
+			long t = head; head = tail; tail = t;
+		}
+	}
+
+	/* the lines of one band, joined by the keys of their ends */
+	class Tracer
+	{
+		Map<Long, Line> ends = new HashMap<Long, Line>();
+		HashSet<Line> open = new HashSet<Line>();
+
+		void segment(int level, long ka, double a[], long kb, double b[])
+		{
+			Line l = new Line();
+			l.level = level;
+			l.add(true, a);
+			l.add(true, b);
+			l.head = ka;
+			l.tail = kb;
+			join(l);
+		}
+
+		/* adds l to the lines that end where it does, writes it if that */
+		/* closes it */
+		void join(Line l)
+		{
+			Line lh = ends.remove(l.head);
+			if (lh!=null)
+			{
+				ends.remove(lh.head==l.head ? lh.tail : lh.head);
+				open.remove(lh);
+				attach(lh, l.head, l);
+				l = lh;
+			}
+			if (l.head!=l.tail)
+			{
+				Line lt = ends.remove(l.tail);
+				if (lt!=null)
+				{
+					ends.remove(lt.head==l.tail ? lt.tail : lt.head);
+					open.remove(lt);
+					attach(l, l.tail, lt);
+				}
+			}
+			if (l.head==l.tail)
+			{
+				emit(l);
+				return;
+			}
+			ends.put(l.head, l);
+			ends.put(l.tail, l);
+			open.add(l);
+		}
+
+		/* writes the lines that cannot grow any more: those without an end */
+		/* on pixel row j or seam */
+		void settle(int j, int seam)
+		{
+			for (Iterator<Line> it = open.iterator(); it.hasNext(); )
+			{
+				Line l = it.next();
+				if (!live(l.head, j, seam) && !live(l.tail, j, seam))
+				{
+					it.remove();
+					ends.remove(l.head);
+					ends.remove(l.tail);
+					emit(l);
+				}
+			}
+		}
+	}
+
+	/* l joined to the end of base on the edge key */
+	static void attach(Line base, long key, Line l)
+	{
+		if (base.tail!=key) base.reverse();
+		if (l.head!=key) l.reverse();
+		double q[] = new double[4];
+		for (int k=l.from+4; k<l.to; k+=4)
+		{
+			System.arraycopy(l.pts, k, q, 0, 4);
+			base.add(true, q);
+		}
+		base.tail = l.tail;
+	}
+
+	boolean live(long key, int j, int seam)
+	{
+		long edge = key%(2L*width*height);
+		if ((edge&1)!=0) return false; /* edges across a row are done with the row */
+		long row = (edge>>1)/width;
+		return row==j || row==seam;
+	}
+
+	long key(int level, boolean across, int i, int j)
+	{
+		return level*(2L*width*height)+2L*((long)j*width+i)+(across ? 1 : 0);
+	}
+
+	void run()
+	{
+		final int cells = height-1;
+		final Vector<Tracer> tracers = new Vector<Tracer>();
+		for (int b=0; b<Parallel.bands(planet.threads, cells); b++) tracers.add(new Tracer());
+
+		Parallel.run(planet.threads, cells, new IBand()
+		{
+			public void run(int band, int from, int to)
+			{
+				trace(tracers.get(band), from, to);
+			}
+		});
+
+		/* join the lines that met at the seams, and write out the rest */
+		Tracer all = new Tracer();
+		for (int b=0; b<tracers.size(); b++)
+			for (Iterator<Line> it = tracers.get(b).open.iterator(); it.hasNext(); )
+				all.join(it.next());
+		for (Iterator<Line> it = all.open.iterator(); it.hasNext(); )
+			emit(it.next());
+	}
+
+	/* the cells of rows from..to-1, lines ending on row from are kept for */
+	/* the band above */
+	void trace(Tracer t, int from, int to)
+	{
+		int w = width;
+		int rows = PlanetJ.max(2, PlanetJ.min(to-from+1, STRIP/PlanetJ.max(1, w)));
+		int bits[] = new int[w*rows];
+		double above[] = new double[w], below[] = new double[w];
+		double xyz[][] = { new double[3*w], new double[3*w] };
+		double q[] = new double[3];
+		int seam = (from>0 ? from : -1);
+
+		int j0 = from, n = 0;
+		for (int j=from; j<=to; j++)
+		{
+			/* pixel row j into below, a strip at a time */
+			if (j-j0>=n)
+			{
+				j0 = j;
+				n = PlanetJ.min(rows, to+1-j);
+				for (int i=0; i<w; i++) elevation.read(i, j0, bits, i*n, n);
+			}
+			double xyzBelow[] = xyz[j&1];
+			for (int i=0; i<w; i++)
+			{
+				below[i] = Float.intBitsToFloat(bits[i*n+j-j0]);
+				if (!Double.isNaN(below[i]) && geometry.point(i, j, q))
+					System.arraycopy(q, 0, xyzBelow, 3*i, 3);
+				else below[i] = Double.NaN;
+			}
+
+			if (j>from)
+			{
+				for (int l=0; l<levels.length; l++)
+					for (int i=0; i<w-1; i++)
+						cell(t, l, i, j-1, above, below, xyz[(j-1)&1], xyzBelow);
+				t.settle(j, seam);
+			}
+
+			double s[] = above; above = below; below = s;
+		}
+	}
+
+	/* the segments of cell (i,j) for level l */
+	void cell(Tracer t, int l, int i, int j, double above[], double below[], double xa[], double xb[])
+	{
+		double v00 = above[i], v10 = above[i+1], v01 = below[i], v11 = below[i+1];
+		if (Double.isNaN(v00) || Double.isNaN(v10) || Double.isNaN(v01) || Double.isNaN(v11)) return;
+
+		double level = levels[l];
+		boolean a = v00>=level, b = v10>=level, c = v11>=level, d = v01>=level;
+		if (a==b && b==c && c==d) return;
+
+		/* crossings: top, right, bottom, left */
+		long kt = key(l, false, i, j), kr = key(l, true, i+1, j);
+		long kb = key(l, false, i, j+1), kl = key(l, true, i, j);
+
+		if (a==c && b==d)
+		{
+			/* saddle */
+			boolean centre = (v00+v10+v01+v11)/4>=level;
+			if (centre==a)
+			{
+				t.segment(l, kt, point(i, j, i+1, j, v00, v10, level, xa, xa), kr, point(i+1, j, i+1, j+1, v10, v11, level, xa, xb));
+				t.segment(l, kb, point(i, j+1, i+1, j+1, v01, v11, level, xb, xb), kl, point(i, j, i, j+1, v00, v01, level, xa, xb));
+			}
+			else
+			{
+				t.segment(l, kt, point(i, j, i+1, j, v00, v10, level, xa, xa), kl, point(i, j, i, j+1, v00, v01, level, xa, xb));
+				t.segment(l, kr, point(i+1, j, i+1, j+1, v10, v11, level, xa, xb), kb, point(i, j+1, i+1, j+1, v01, v11, level, xb, xb));
+			}
+			return;
+		}
+
+		long k1 = 0, k2 = 0;
+		double p1[] = null, p2[] = null;
+		if (a!=b) { k1 = kt; p1 = point(i, j, i+1, j, v00, v10, level, xa, xa); }
+		if (b!=c)
+		{
+			double p[] = point(i+1, j, i+1, j+1, v10, v11, level, xa, xb);
+			if (p1==null) { k1 = kr; p1 = p; } else { k2 = kr; p2 = p; }
+		}
+		if (c!=d)
+		{
+			double p[] = point(i, j+1, i+1, j+1, v01, v11, level, xb, xb);
+			if (p1==null) { k1 = kb; p1 = p; } else { k2 = kb; p2 = p; }
+		}
+		if (d!=a)
+		{
+			double p[] = point(i, j, i, j+1, v00, v01, level, xa, xb);
+			k2 = kl;
+			p2 = p;
+		}
+		t.segment(l, k1, p1, k2, p2);
+	}
+
+	/* where the level is crossed between pixels (i1,j1) and (i2,j2) */
+	double[] point(int i1, int j1, int i2, int j2, double v1, double v2, double level, double x1[], double x2[])
+	{
+		double f = (level-v1)/(v2-v1);
+		double x = x1[3*i1]+f*(x2[3*i2]-x1[3*i1]);
+		double y = x1[3*i1+1]+f*(x2[3*i2+1]-x1[3*i1+1]);
+		double z = x1[3*i1+2]+f*(x2[3*i2+2]-x1[3*i1+2]);
+		double r = Math.sqrt(x*x+y*y+z*z);
+		return new double[] { i1+f*(i2-i1), j1+f*(j2-j1),
+				Math.toDegrees(Math.atan2(x, z)), Math.toDegrees(-Math.asin(y/r)) };
+	}
+
+	/* Douglas-Peucker on the pixel positions, then to the sink */
+	void emit(Line l)
+	{
+		int n = l.size();
+		boolean keep[] = new boolean[n];
+		keep[0] = keep[n-1] = true;
+
+		int stack[] = new int[2*n];
+		int top = 0;
+		stack[top++] = 0;
+		stack[top++] = n-1;
+		while (top>0)
+		{
+			int b = stack[--top], a = stack[--top];
+			if (b-a<2) continue;
+			double ax = l.pts[l.from+4*a], ay = l.pts[l.from+4*a+1];
+			double dx = l.pts[l.from+4*b]-ax, dy = l.pts[l.from+4*b+1]-ay;
+			double len = Math.sqrt(dx*dx+dy*dy);
+			int far = -1;
+			double most = tolerance;
+			for (int k=a+1; k<b; k++)
+			{
+				double px = l.pts[l.from+4*k]-ax, py = l.pts[l.from+4*k+1]-ay;
+				double d = (len>0.0 ? Math.abs(px*dy-py*dx)/len : Math.sqrt(px*px+py*py));
+				if (d>most) { most = d; far = k; }
+			}
+			if (far<0) continue;
+			keep[far] = true;
+			stack[top++] = a;
+			stack[top++] = far;
+			stack[top++] = far;
+			stack[top++] = b;
+		}
+
+		int m = 0;
+		for (int k=0; k<n; k++) if (keep[k]) m++;
+		double lonlat[] = new double[2*m];
+		for (int k=0, o=0; k<n; k++)
+			if (keep[k])
+			{
+				lonlat[o++] = l.pts[l.from+4*k+2];
+				lonlat[o++] = l.pts[l.from+4*k+3];
+			}
+		sink.line(l.level, lonlat);
+	}
+
+	static abstract class Sink
+	{
+		String file;
+
+		abstract void line(int level, double lonlat[]);
+		abstract void close();
+
+		IllegalArgumentException failed(IOException e)
+		{
+			return new IllegalArgumentException("Cannot write contours: "+file, e);
+		}
+	}
+
+	static class GeoJson extends Sink
+	{
+		Writer out;
+		double levels[];
+		boolean first = true;
+
+		GeoJson(String f, double levels[])
+		{
+			file = f;
+			this.levels = levels;
+			try
+			{
+				out = new OutputStreamWriter(new BufferedOutputStream(new FileOutputStream(f), 1<<16), "UTF-8");
+				out.write("{\"type\":\"FeatureCollection\",\"features\":[");
+			}
+			catch (IOException e)
+			{
+				throw failed(e);
+			}
+		}
+
+		synchronized void line(int level, double lonlat[])
+		{
+			StringBuilder s = new StringBuilder();
+			s.append(first ? "\n" : ",\n");
+			s.append("{\"type\":\"Feature\",\"properties\":{\"level\":").append(levels[level]);
+			s.append("},\"geometry\":{\"type\":\"LineString\",\"coordinates\":[");
+			for (int k=0; k<lonlat.length; k+=2)
+			{
+				if (k>0) s.append(',');
+				s.append('[').append((float)lonlat[k]).append(',').append((float)lonlat[k+1]).append(']');
+			}
+			s.append("]}}");
+			first = false;
+			try
+			{
+				out.write(s.toString());
+			}
+			catch (IOException e)
+			{
+				throw failed(e);
+			}
+		}
+
+		void close()
+		{
+			try
+			{
+				out.write("\n]}\n");
+				out.close();
+			}
+			catch (IOException e)
+			{
+				throw failed(e);
+			}
+		}
+	}
+
+	static class Binary extends Sink
+	{
+		DataOutputStream out;
+
+		Binary(String f, double levels[])
+		{
+			file = f;
+			try
+			{
+				out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(new File(f)), 1<<16));
+				out.writeBytes("PJCL");
+				out.writeInt(levels.length);
+				for (int l=0; l<levels.length; l++) out.writeDouble(levels[l]);
+			}
+			catch (IOException e)
+			{
+				throw failed(e);
+			}
+		}
+
+		synchronized void line(int level, double lonlat[])
+		{
+			try
+			{
+				out.writeInt(level);
+				out.writeInt(lonlat.length/2);
+				for (int k=0; k<lonlat.length; k++) out.writeFloat((float)lonlat[k]);
+			}
+			catch (IOException e)
+			{
+				throw failed(e);
+			}
+		}
+
+		void close()
+		{
+			try
+			{
+				out.writeInt(-1);
+				out.close();
+			}
+			catch (IOException e)
+			{
+				throw failed(e);
+			}
+		}
+	}
+}
@@ -0,0 +1,68 @@
+package planetj;
+
+/* Rebuilds the colours or the shades from the G-buffer, with whatever */
+/* colour and light settings the planet has now. */
+
+public class Deferred implements IPostStage
+{
+	GBuffer gbuffer;
+	int channel;
+	PlanetJ planet;
+	Geometry geometry;
+
+	public Deferred(GBuffer gbuffer, int channel)
+	{
+		this.gbuffer = gbuffer;
+		this.channel = channel;
+	}
+
+	public int channel()
+	{
+		return channel;
+	}
+
+	public int reach()
+	{
+		return 0;
+	}
+
+	public void setup(PlanetJ p)
+	{
+		planet = p;
+		geometry = Geometry.get(p);
+	}
+
+	public void apply(int in[][], int r, int i, int out[])
+	{
+		int h = out.length;
+		double alt[] = new double[h];
+		gbuffer.altitude(i, 0, alt, h);
+
+		if (channel==COLOURS)
+		{
+			double p[] = new double[3];
+			for (int j=0; j<h; j++)
+			{
+				if (Double.isNaN(alt[j])) out[j] = planet.BACK;
+				else
+				{
+					geometry.point(i, j, p);
+					out[j] = planet.colorTable.color(alt[j], p[1]);
+				}
+			}
+			return;
+		}
+
+		double n[] = new double[h], e[] = new double[h];
+		gbuffer.normal(i, 0, n, e, h);
+		for (int j=0; j<h; j++)
+		{
+			if (Double.isNaN(alt[j]))
+			{
+				if (planet.doshade) out[j] = 255;
+			}
+			else if (!planet.doWaterShade && alt[j]<=0.0) out[j] = planet.waterShade;
+			else if (planet.doshade) out[j] = planet.shade(n[j], e[j]);
+		}
+	}
+}
@@ -0,0 +1,207 @@
+package planetj;
+
+/* What a render will take, worked out before anything is allocated, and */
+/* what to do about a map that would not fit. */
+
+/* Memory is counted from the options: every raster on the heap is an int */
+/* per pixel (HeapRaster), or the given bytes per pixel of scratch file */
+/* with --raster-dir; then the G-buffer, layers and cost map if asked for, */
+/* the pixel geometry if it fits its cache, the top of the tree and the */
+/* image save() builds for anything but a PNG. Time */
+/* comes from a sampling run: SEGMENTS runs of RUN pixels across the map, */
+/* rendered ROUNDS times on a prepared copy of the planet, the fastest */
+/* counting (the first ones warm up the JIT), and scaled to the share of */
+/* pixels that show the globe. It leaves out early termination, shading, */
+/* post-processing and saving, and comes within about half either way of */
+/* the render itself. */
+
+/* --admission says what setup() does with a map that needs more heap */
+/* than --memory-limit MB (by default about what the JVM has left): */
+/* "refuse" throws, "downgrade" renders it smaller, "stream" (the */
+/* default) moves the rasters to memory-mapped files in the temporary */
+/* directory and refuses if that is not enough, "off" starts it anyway. */
+/* Only "refuse" and "downgrade" time the render, and treat a map that */
+/* would take more than --time-limit the same way; otherwise the limit */
+/* is left to the deadline, which stops the render with what it has. */
+
+public class Estimate
+{
+	static final int SEGMENTS = 16;
+	static final int RUN = 256;
+	static final int ROUNDS = 6;
+	static final int GRID = 64; /* points across and down to measure the globe's share */
+
+	public long heap, disk; /* bytes */
+	public double nsPerPixel; /* rendering a pixel that shows the globe */
+	public double visible; /* share of the pixels that do */
+	public long millis; /* rendering all of them */
+	public boolean timed; /* whether the three above were worked out */
+
+	/* memory and time of the render p is set up for, p has had init() */
+	public static Estimate of(PlanetJ p)
+	{
+		Estimate e = new Estimate();
+		e.memory(p);
+		e.time(p);
+		return e;
+	}
+
+	void memory(PlanetJ p)
+	{
+		heap = disk = 0;
+		long rows = Parallel.from(p.band+1, p.bands, p.Height)-Parallel.from(p.band, p.bands, p.Height);
+		boolean mapped = (p.rasterDir!=null && !p.rasterDir.equals("false"));
+		int rasters[] = { 4, 1, 1 };
+		raster(p, rows, mapped, rasters);
+		if (p.deferred) raster(p, rows, mapped, new int[] { 4, 4, 4 });
+		if (set(p.layers)) raster(p, rows, mapped, new int[] { 4, 4, 4, 1 });
+		else if (set(p.contours) || set(p.tiles)) raster(p, rows, mapped, new int[] { 4 });
+		if (set(p.costMap)) raster(p, rows, mapped, new int[] { 4 });
+
+		long pixels = (long)p.Width*p.Height;
+		if ("mpq".indexOf(p.view)<0 && 25L*pixels<=(long)p.geometryCache<<20) heap += 25L*pixels;
+		heap += 16L*(p.Width+p.Height);
+		heap += TopTree.bytes(TopTree.levels(p));
+
+		/* the post-processing window of every thread, colours and shades */
+		heap += 2L*Parallel.threads(p.threads)*8*4*rows;
+
+		if (p.bands==1 && set(p.filename) && !p.filename.toLowerCase().endsWith(".png"))
+			heap += 4L*pixels;
+	}
+
+	void raster(PlanetJ p, long rows, boolean mapped, int bytes[])
+	{
+		for (int k=0; k<bytes.length; k++)
+		{
+			if (mapped) disk += bytes[k]*p.Width*rows;
+			else heap += (4*rows+16)*p.Width;
+		}
+	}
+
+	static boolean set(String option)
+	{
+		return option!=null && !option.equals("false");
+	}
+
+	/* renders a sample of the pixels on a copy of the planet, which */
+	/* need not have been prepared */
+	void time(PlanetJ p)
+	{
+		PlanetJ q = p.engine();
+		q.gbuffer = null;
+		q.layerData = null;
+		q.prepare();
+		Geometry g = Geometry.get(q);
+		double xyz[] = new double[3];
+
+		int on = 0;
+		for (int a=0; a<GRID; a++)
+			for (int b=0; b<GRID; b++)
+				if (g.point((int)((a+0.5)*q.Width/GRID), (int)((b+0.5)*q.Height/GRID), xyz)) on++;
+		visible = (double)on/(GRID*GRID);
+
+		long ns = Long.MAX_VALUE;
+		int pixels = 0;
+		for (int round=0; round<ROUNDS; round++)
+		{
+			PlanetJ e = q.engine();
+			long t0 = System.nanoTime();
+			pixels = 0;
+			for (int s=0; s<SEGMENTS; s++)
+			{
+				int j = (int)((s+0.5)*q.Height/SEGMENTS);
+				int i0 = (int)((long)s*q.Width/SEGMENTS);
+				for (int i=i0; i<PlanetJ.min(q.Width, i0+RUN); i++)
+				{
+					if (!g.point(i, j, xyz)) continue;
+					int depth = g.depth(i, j);
+					double alt;
+					if (e.floatTerrain!=null && depth<=FloatTerrain.MAX_DEPTH)
+						alt = e.floatTerrain.planet1(xyz[0], xyz[1], xyz[2], depth);
+					else
+						alt = e.planet1(xyz[0], xyz[1], xyz[2], depth);
+					e.colorTable.color(alt, xyz[1]);
+					pixels++;
+				}
+			}
+			ns = Math.min(ns, System.nanoTime()-t0);
+		}
+		nsPerPixel = (pixels==0 ? 0.0 : (double)ns/pixels);
+		millis = (long)(nsPerPixel*visible*p.Width*p.Height/1e6);
+		timed = true;
+	}
+
+	public String toString()
+	{
+		String s = "heap "+(heap>>20)+" MB, scratch files "+(disk>>20)+" MB";
+		if (timed) s += ", rendering about "+(millis+500)/1000+" s ("+Math.round(nsPerPixel)+" ns a pixel, "
+			+Math.round(100*visible)+"% of them)";
+		return s;
+	}
+
+	/* bytes of heap p may take */
+	static long limit(PlanetJ p)
+	{
+		if (p.memoryLimit>0) return (long)p.memoryLimit<<20;
+		Runtime r = Runtime.getRuntime();
+		return (long)(0.9*(r.maxMemory()-(r.totalMemory()-r.freeMemory())));
+	}
+
+	/* applies p.admission before setup() allocates anything */
+	public static void admit(PlanetJ p)
+	{
+		String policy = p.admission;
+		if (policy.equals("off")) return;
+		if (!policy.equals("refuse") && !policy.equals("downgrade") && !policy.equals("stream"))
+		{
+			throw new IllegalArgumentException("Unknown admission policy: "+policy);
+		}
+
+		Estimate e = new Estimate();
+		e.memory(p);
+		if (p.timeLimit>0 && !policy.equals("stream")) e.time(p);
+		long limit = limit(p);
+		if (p.debug) System.err.println("estimate: "+e);
+
+		boolean slow = (e.timed && e.millis>p.timeLimit);
+		if (e.heap<=limit && !slow) return;
+
+		if (policy.equals("stream") && e.heap>limit && !set(p.rasterDir))
+		{
+			p.rasterDir = System.getProperty("java.io.tmpdir");
+			e.memory(p);
+			System.err.println("Rasters moved to "+p.rasterDir+": "+e);
+			if (e.heap<=limit) return;
+		}
+
+		if (policy.equals("downgrade"))
+		{
+			/* memory and time both go with the number of pixels */
+			double f = 1.0;
+			if (e.heap>limit) f = Math.min(f, (double)limit/e.heap);
+			if (slow) f = Math.min(f, (double)p.timeLimit/e.millis);
+			f = Math.sqrt(f);
+			int w = p.Width, h = p.Height;
+			do
+			{
+				p.Width = PlanetJ.max(1, (int)(w*f));
+				p.Height = PlanetJ.max(1, (int)(h*f));
+				e.memory(p);
+				f *= 0.95;
+			}
+			while (e.heap>limit && p.Width>1 && p.Height>1);
+			System.err.println("Map downgraded from "+w+"x"+h+" to "+p.Width+"x"+p.Height+": "+e.heap/(1<<20)+" MB of heap");
+			return;
+		}
+
+		if (e.heap<=limit)
+		{
+			throw new IllegalArgumentException("A "+p.Width+"x"+p.Height+" map needs "+e+", with "+p.timeLimit
+					+" ms to spare; use a smaller map, --admission downgrade, or --admission stream to render what"
+					+" it can in the time");
+		}
+		throw new IllegalArgumentException("A "+p.Width+"x"+p.Height+" map needs "+e+", with "+(limit>>20)
+				+" MB of heap to spare; use --raster-dir, a smaller map or --admission downgrade");
+	}
+}
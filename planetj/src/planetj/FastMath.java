@@ -0,0 +1,134 @@
+package planetj;
+
+import java.util.Properties;
+import java.util.Random;
+
+/* Table driven replacement for the powers taken in every subdivision step. */
+
+/* x^p is split into 2^(p*e) for the binary exponent e, read from a table, */
+/* and m^p for the mantissa m in [1,2), interpolated linearly between 4096 */
+/* table entries. The relative error of the result stays below 2e-9 (the */
+/* bound of linear interpolation, h^2/8 p(1-p) for h = 2^-12 and p = .45, */
+/* is 1.85e-9; maxError() sees 1.84e-9), which moves altitudes by far less */
+/* than one colour step; main() measures what that does to a real map. */
+
+public class FastMath
+{
+	static final int BITS = 12;
+	static final int SHIFT = 52-BITS;
+	static final double SCALE = 1.0/(1L<<SHIFT);
+
+	/* planet() takes lab^0.45, after raising lab to 0.75 if it is above 1 */
+	static final double NEAR = 0.45, FAR = 0.75*0.45;
+
+	static final double nearMantissa[] = mantissa(NEAR), nearExponent[] = exponent(NEAR);
+	static final double farMantissa[] = mantissa(FAR), farExponent[] = exponent(FAR);
+
+	static double[] mantissa(double p)
+	{
+		double t[] = new double[(1<<BITS)+1];
+		for (int k=0; k<t.length; k++)
+			t[k] = Math.pow(1.0+(double)k/(1<<BITS), p);
+		return t;
+	}
+
+	static double[] exponent(double p)
+	{
+		double t[] = new double[2048];
+		for (int e=1; e<2047; e++)
+			t[e] = Math.pow(2.0, p*(e-1023));
+		return t;
+	}
+
+	static double pow(double x, double p, double mantissa[], double exponent[])
+	{
+		long bits = Double.doubleToRawLongBits(x);
+		int e = (int)(bits>>>52);
+
+		if (e<=0 || e>=2047) return Math.pow(x, p); /* negative, subnormal, infinite */
+
+		long m = bits&((1L<<52)-1);
+		int k = (int)(m>>>SHIFT);
+		double f = (m&((1L<<SHIFT)-1))*SCALE;
+		return (mantissa[k]+f*(mantissa[k+1]-mantissa[k]))*exponent[e];
+	}
+
+	/* the distance term of planet(), for the squared edge length lab */
+	public static double distance(double lab)
+	{
+		if (lab>1.0) return pow(lab, FAR, farMantissa, farExponent);
+		return pow(lab, NEAR, nearMantissa, nearExponent);
+	}
+
+	/* largest relative error of distance() seen over n random lengths */
+	public static double maxError(int n)
+	{
+		Random r = new Random(1);
+		double worst = 0.0;
+
+		for (int k=0; k<n; k++)
+		{
+			double lab = Math.exp(-40.0+45.0*r.nextDouble());
+			double exact = (lab>1.0 ? Math.pow(Math.pow(lab, 0.75), 0.45) : Math.pow(lab, 0.45));
+			worst = Math.max(worst, Math.abs(distance(lab)-exact)/exact);
+		}
+		return worst;
+	}
+
+	/* Renders the view given on the command line (same options as Main) */
+	/* once exactly and once with fast math, and reports the difference. */
+	public static void main(String[] args) throws Exception
+	{
+		Properties prop = Main.procArgs(args);
+		if (prop.getProperty("-s")==null && prop.getProperty("seed")==null)
+		{
+			prop.setProperty("-s", Double.toString(new Random().nextDouble()));
+		}
+
+		/* let the JIT see both paths before timing either */
+		Properties small = new Properties();
+		small.putAll(prop);
+		small.setProperty("-w", "128");
+		small.setProperty("-h", "64");
+		render(small, false);
+		render(small, true);
+
+		long t0 = System.currentTimeMillis();
+		PlanetJ exact = render(prop, false);
+		long t1 = System.currentTimeMillis();
+		PlanetJ fast = render(prop, true);
+		long t2 = System.currentTimeMillis();
+
+		long pixels = 0, mismatches = 0;
+		double worst = 0.0;
+		Geometry g = Geometry.get(exact);
+		double p[] = new double[3];
+		for (int j=0; j<exact.Height; j++)
+		{
+			for (int i=0; i<exact.Width; i++)
+			{
+				if (!g.point(i, j, p)) continue;
+				pixels++;
+				if (exact.col.get(i, j)!=fast.col.get(i, j)) mismatches++;
+				int depth = g.depth(i, j);
+				worst = Math.max(worst, Math.abs(exact.planet1(p[0], p[1], p[2], depth)-fast.planet1(p[0], p[1], p[2], depth)));
+			}
+		}
+
+		System.out.println("distance term max relative error: "+maxError(1000000));
+		System.out.println("pixels: "+pixels);
+		System.out.println("colour mismatches: "+mismatches+" ("+(100.0*mismatches/Math.max(1L, pixels))+"%)");
+		System.out.println("max altitude error: "+worst);
+		System.out.println("exact: "+(t1-t0)+" ms, fast: "+(t2-t1)+" ms");
+	}
+
+	static PlanetJ render(Properties prop, boolean fast)
+	{
+		PlanetJ planet = new PlanetJ();
+		planet.init(prop);
+		planet.fastMath = fast;
+		planet.setup();
+		planet.process();
+		return planet;
+	}
+}
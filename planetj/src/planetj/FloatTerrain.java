@@ -0,0 +1,176 @@
+package planetj;
+
+/* planet1()/planet() with the tetrahedron geometry in single precision. */
+
+/* Altitudes and seeds stay double: the seeds are mixed by rand2(), which */
+/* would give a different planet for the slightest change. The vertex */
+/* coordinates, edges and side tests are float, which halves the state */
+/* carried down the recursion. Float coordinates only resolve edges down */
+/* to about 1e-4 before the side tests start to pick the wrong child, so */
+/* PlanetJ only uses this engine up to MAX_DEPTH levels and falls back to */
+/* the double engine for deeper (more magnified) pixels. */
+
+public class FloatTerrain
+{
+	public static final int MAX_DEPTH = 42;
+
+	PlanetJ planet;
+	public int shade;
+
+	double ssa,ssb,ssc,ssd, ssas,ssbs,sscs,ssds;
+	float ssax,ssay,ssaz, ssbx,ssby,ssbz, sscx,sscy,sscz, ssdx,ssdy,ssdz;
+	int ssDepth = -1;
+
+	public FloatTerrain(PlanetJ planet)
+	{
+		this.planet = planet;
+	}
+
+	public double planet1(double px, double py, double pz, int depth)
+	{
+		float x = (float)px, y = (float)py, z = (float)pz;
+		float abx,aby,abz, acx,acy,acz, adx,ady,adz, apx,apy,apz;
+		float bax,bay,baz, bcx,bcy,bcz, bdx,bdy,bdz, bpx,bpy,bpz;
+
+		abx = ssbx-ssax; aby = ssby-ssay; abz = ssbz-ssaz;
+		acx = sscx-ssax; acy = sscy-ssay; acz = sscz-ssaz;
+		adx = ssdx-ssax; ady = ssdy-ssay; adz = ssdz-ssaz;
+		apx = x-ssax; apy = y-ssay; apz = z-ssaz;
+		if (depth==ssDepth && (adx*aby*acz+ady*abz*acx+adz*abx*acy
+				-adz*aby*acx-ady*abx*acz-adx*abz*acy)*
+				(apx*aby*acz+apy*abz*acx+apz*abx*acy
+						-apz*aby*acx-apy*abx*acz-apx*abz*acy)>0.0f){
+			/* p is on same side of abc as d */
+			if ((acx*aby*adz+acy*abz*adx+acz*abx*ady
+					-acz*aby*adx-acy*abx*adz-acx*abz*ady)*
+					(apx*aby*adz+apy*abz*adx+apz*abx*ady
+							-apz*aby*adx-apy*abx*adz-apx*abz*ady)>0.0f){
+				/* p is on same side of abd as c */
+				if ((abx*ady*acz+aby*adz*acx+abz*adx*acy
+						-abz*ady*acx-aby*adx*acz-abx*adz*acy)*
+						(apx*ady*acz+apy*adz*acx+apz*adx*acy
+								-apz*ady*acx-apy*adx*acz-apx*adz*acy)>0.0f){
+					/* p is on same side of acd as b */
+					bax = -abx; bay = -aby; baz = -abz;
+					bcx = sscx-ssbx; bcy = sscy-ssby; bcz = sscz-ssbz;
+					bdx = ssdx-ssbx; bdy = ssdy-ssby; bdz = ssdz-ssbz;
+					bpx = x-ssbx; bpy = y-ssby; bpz = z-ssbz;
+					if ((bax*bcy*bdz+bay*bcz*bdx+baz*bcx*bdy
+							-baz*bcy*bdx-bay*bcx*bdz-bax*bcz*bdy)*
+							(bpx*bcy*bdz+bpy*bcz*bdx+bpz*bcx*bdy
+									-bpz*bcy*bdx-bpy*bcx*bdz-bpx*bcz*bdy)>0.0f){
+						/* p is on same side of bcd as a */
+						/* Hence, p is inside tetrahedron */
+						planet.shortcutHits++;
+						return(planet(ssa,ssb,ssc,ssd, ssas,ssbs,sscs,ssds,
+								ssax,ssay,ssaz, ssbx,ssby,ssbz,
+								sscx,sscy,sscz, ssdx,ssdy,ssdz,
+								x,y,z, 11));
+					}
+				}
+			}
+		} /* otherwise */
+		if (depth>=11) ssDepth = depth;
+		planet.shortcutMisses++;
+		double i = planet.initialAltitude;
+		return(planet(i,i,i,i,
+				planet.r1,planet.r2,planet.r3,planet.r4,
+				0.0f, 0.0f, 3.01f,
+				0.0f, (float)(Math.sqrt(8.0)+.01), -1.01f,
+				(float)(-Math.sqrt(6.0)-.01), (float)(-Math.sqrt(2.0)-.01), -1.01f,
+				(float)(Math.sqrt(6.0)-.005), (float)(-Math.sqrt(2.0)-.005), -1.005f,
+				x,y,z,
+				depth));
+	}
+
+	double planet(
+			double a, double b, double c, double d, /* altitudes of the 4 verticess */
+			double as, double bs, double cs, double ds, /* seeds of the 4 verticess */
+			float ax, float ay, float az, /* vertex coordinates */
+			float bx, float by, float bz,
+			float cx, float cy, float cz,
+			float dx, float dy, float dz,
+			float x, float y, float z, /* goal point */
+			int level /* levels to go */)
+	{
+		float abx,aby,abz, acx,acy,acz, adx,ady,adz;
+		float bcx,bcy,bcz, bdx,bdy,bdz, cdx,cdy,cdz;
+		float lab, lac, lad, lbc, lbd, lcd;
+		float ex, ey, ez;
+		float eax,eay,eaz, epx,epy,epz;
+		float ecx,ecy,ecz, edx,edy,edz;
+		double e, es, l1;
+
+		if (level>0) {
+			planet.visits++;
+			if (level==11) {
+				ssa=a; ssb=b; ssc=c; ssd=d; ssas=as; ssbs=bs; sscs=cs; ssds=ds;
+				ssax=ax; ssay=ay; ssaz=az; ssbx=bx; ssby=by; ssbz=bz;
+				sscx=cx; sscy=cy; sscz=cz; ssdx=dx; ssdy=dy; ssdz=dz;
+			}
+			abx = ax-bx; aby = ay-by; abz = az-bz;
+			acx = ax-cx; acy = ay-cy; acz = az-cz;
+			lab = abx*abx+aby*aby+abz*abz;
+			lac = acx*acx+acy*acy+acz*acz;
+
+			if (lab<lac)
+				return(planet(a,c,b,d, as,cs,bs,ds,
+						ax,ay,az, cx,cy,cz, bx,by,bz, dx,dy,dz,
+						x,y,z, level));
+			adx = ax-dx; ady = ay-dy; adz = az-dz;
+			lad = adx*adx+ady*ady+adz*adz;
+			if (lab<lad)
+				return(planet(a,d,b,c, as,ds,bs,cs,
+						ax,ay,az, dx,dy,dz, bx,by,bz, cx,cy,cz,
+						x,y,z, level));
+			bcx = bx-cx; bcy = by-cy; bcz = bz-cz;
+			lbc = bcx*bcx+bcy*bcy+bcz*bcz;
+			if (lab<lbc)
+				return(planet(b,c,a,d, bs,cs,as,ds,
+						bx,by,bz, cx,cy,cz, ax,ay,az, dx,dy,dz,
+						x,y,z, level));
+			bdx = bx-dx; bdy = by-dy; bdz = bz-dz;
+			lbd = bdx*bdx+bdy*bdy+bdz*bdz;
+			if (lab<lbd)
+				return(planet(b,d,a,c, bs,ds,as,cs,
+						bx,by,bz, dx,dy,dz, ax,ay,az, cx,cy,cz,
+						x,y,z, level));
+			cdx = cx-dx; cdy = cy-dy; cdz = cz-dz;
+			lcd = cdx*cdx+cdy*cdy+cdz*cdz;
+			if (lab<lcd)
+				return(planet(c,d,a,b, cs,ds,as,bs,
+						cx,cy,cz, dx,dy,dz, ax,ay,az, bx,by,bz,
+						x,y,z, level));
+
+			ex = 0.5f*(ax+bx); ey = 0.5f*(ay+by); ez = 0.5f*(az+bz);
+			es = PlanetJ.rand2(as,bs);
+			if (planet.fastMath) l1 = FastMath.distance(lab);
+			else if (lab>1.0f) l1 = Math.pow(Math.pow(lab,0.75),0.45);
+			else l1 = Math.pow(lab,0.45);
+			if (planet.early && level<11 && planet.settled(a,b,c,d, level*planet.distanceWeight*l1)) {
+				planet.earlyStops++;
+				return((a+b+c+d)/4);
+			}
+			planet.splits++;
+			e = 0.5*(a+b)+es*(planet.altitudeWeight*Math.abs(a-b)+planet.distanceWeight*l1);
+			eax = ax-ex; eay = ay-ey; eaz = az-ez;
+			epx = x-ex; epy = y-ey; epz = z-ez;
+			ecx = cx-ex; ecy = cy-ey; ecz = cz-ez;
+			edx = dx-ex; edy = dy-ey; edz = dz-ez;
+			if ((eax*ecy*edz+eay*ecz*edx+eaz*ecx*edy
+					-eaz*ecy*edx-eay*ecx*edz-eax*ecz*edy)*
+					(epx*ecy*edz+epy*ecz*edx+epz*ecx*edy
+							-epz*ecy*edx-epy*ecx*edz-epx*ecz*edy)>0.0f)
+				return(planet(c,d,a,e, cs,ds,as,es,
+						cx,cy,cz, dx,dy,dz, ax,ay,az, ex,ey,ez,
+						x,y,z, level-1));
+			else
+				return(planet(c,d,b,e, cs,ds,bs,es,
+						cx,cy,cz, dx,dy,dz, bx,by,bz, ex,ey,ez,
+						x,y,z, level-1));
+		}
+
+		if (planet.doshade || planet.gbuffer!=null) shade = planet.shade(a, b, c, d, ax, ay, az, bx, by, bz, cx, cy, cz, dx, dy, dz, x, y, z);
+		return((a+b+c+d)/4);
+	}
+}
@@ -0,0 +1,114 @@
+package planetj;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+import javax.imageio.ImageIO;
+
+/* What the terrain generation found at every pixel, kept so the map can */
+/* be recoloured and relit without rendering it again. */
+
+/* The colour of a pixel only depends on its altitude and latitude, and */
+/* its shade on the light and the direction of the altitude gradient */
+/* in the final tetrahedron, given by its north and east components as */
+/* shade() sees them. Altitude and both components are kept as floats, */
+/* so a relit map can differ from a fresh render by a colour or shade */
+/* step where a value lies right on a boundary. The latitude is not */
+/* stored, the pixel geometry gives it back. Background pixels have */
+/* a NaN altitude. */
+
+public class GBuffer
+{
+	public IRaster altitude, north, east;
+
+	public GBuffer(PlanetJ p)
+	{
+		altitude = p.raster(4);
+		north = p.raster(4);
+		east = p.raster(4);
+	}
+
+	/* releases the rasters, the buffer must not be used afterwards */
+	void close()
+	{
+		altitude.close();
+		north.close();
+		east.close();
+	}
+
+	void set(int i, int j, double alt, double n, double e)
+	{
+		altitude.set(i, j, Float.floatToRawIntBits((float)alt));
+		north.set(i, j, Float.floatToRawIntBits((float)n));
+		east.set(i, j, Float.floatToRawIntBits((float)e));
+	}
+
+	void back(int i, int j)
+	{
+		altitude.set(i, j, Float.floatToRawIntBits(Float.NaN));
+		north.set(i, j, 0);
+		east.set(i, j, 0);
+	}
+
+	/* column i from row j on, NaN for the background */
+	public void altitude(int i, int j, double alt[], int n)
+	{
+		read(altitude, i, j, alt, n);
+	}
+
+	public void normal(int i, int j, double n[], double e[], int count)
+	{
+		read(north, i, j, n, count);
+		read(east, i, j, e, count);
+	}
+
+	static void read(IRaster r, int i, int j, double v[], int n)
+	{
+		int bits[] = new int[n];
+		r.read(i, j, bits, 0, n);
+		for (int k=0; k<n; k++)
+			v[k] = Float.intBitsToFloat(bits[k]);
+	}
+
+	/* The normals as a tangent space normal map: red east, green north, */
+	/* blue up, each mapped from -1..1 to 0..255. Flat for the background. */
+	public void saveNormals(String f)
+	{
+		int w = altitude.width(), h = altitude.height();
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		double alt[] = new double[h], n[] = new double[h], e[] = new double[h];
+
+		for (int i=0; i<w; i++)
+		{
+			altitude(i, 0, alt, h);
+			normal(i, 0, n, e, h);
+			for (int j=0; j<h; j++)
+			{
+				double x = 0.0, y = 0.0;
+				if (!Double.isNaN(alt[j]))
+				{
+					x = e[j];
+					y = n[j];
+				}
+				double z = Math.sqrt(Math.max(0.0, 1.0-x*x-y*y));
+				image.setRGB(i, j, (channel(x)<<16)|(channel(y)<<8)|channel(z));
+			}
+		}
+
+		String type = (f.toLowerCase().endsWith(".png") ? "png" : "jpg");
+		try
+		{
+			ImageIO.write(image, type, new File(f));
+		}
+		catch (IOException e1)
+		{
+			throw new IllegalArgumentException("Cannot write normal map: "+f, e1);
+		}
+	}
+
+	static int channel(double v)
+	{
+		return PlanetJ.max(0, PlanetJ.min(255, (int)Math.round(127.5*(v+1.0))));
+	}
+}
@@ -0,0 +1,473 @@
+package planetj;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/* Where each pixel of a view looks at the globe. */
+
+/* A geometry depends only on the projection, the size of the map, its */
+/* centre and the scale, so it is kept in a small cache and shared by all */
+/* renders (and seeds) with the same layout. The cylindrical projections */
+/* are separable and only need a table per row and one per column. The */
+/* others keep the unit vector of every pixel, as long as that fits in */
+/* the cache budget, and work it out per pixel otherwise. */
+
+public abstract class Geometry
+{
+	public int Width, Height;
+	public int Depth;
+	public double scale;
+	boolean footprint; /* PlanetJ.footprintDepth */
+
+	double grid[]; /* x,y,z per pixel */
+	boolean off[]; /* pixels that do not show the globe */
+
+	static LinkedHashMap<String, Geometry> cache = new LinkedHashMap<String, Geometry>(16, 0.75f, true);
+	static long cached;
+
+	public static synchronized Geometry get(PlanetJ p)
+	{
+		String key = p.view+" "+p.Width+"x"+p.Height+" "+p.baseLongitude+" "+p.baseLatitude+" "+p.scale+" "+p.Depth+" "+p.footprintDepth;
+		long budget = (long)p.geometryCache<<20;
+
+		Geometry g = cache.get(key);
+		if (g!=null) return g;
+
+		g = make(p);
+		if (!g.separable() && 25L*p.Width*p.Height<=budget) g.fill();
+
+		cache.put(key, g);
+		cached += g.bytes();
+		Iterator<Map.Entry<String, Geometry>> it = cache.entrySet().iterator();
+		while (cached>budget && it.hasNext()) {
+			Geometry old = it.next().getValue();
+			if (old==g) continue;
+			cached -= old.bytes();
+			it.remove();
+		}
+		return g;
+	}
+
+	public static synchronized void flush()
+	{
+		cache.clear();
+		cached = 0;
+	}
+
+	static Geometry make(PlanetJ p)
+	{
+		switch (p.view) {
+		case 'm':
+		case 'p':
+		case 'q':
+			return new Cylinder(p);
+		case 'M':
+			return new Mollweide(p);
+		case 'S':
+			return new Sinusoid(p);
+		case 's':
+		case 'o':
+		case 'g':
+		case 'a':
+			return new Azimuthal(p);
+		case 'c':
+			return new Conical(p);
+		}
+		throw new IllegalArgumentException("Unknown projection: "+p.view);
+	}
+
+	Geometry(PlanetJ p)
+	{
+		Width = p.Width;
+		Height = p.Height;
+		Depth = p.Depth;
+		scale = p.scale;
+		footprint = p.footprintDepth;
+	}
+
+	/* fills xyz with the unit vector seen at pixel (i,j), */
+	/* returns false for pixels that do not show the globe */
+	public boolean point(int i, int j, double xyz[])
+	{
+		if (grid==null) return compute(i, j, xyz);
+
+		int n = j*Width+i;
+		if (off[n]) return false;
+		n *= 3;
+		xyz[0] = grid[n];
+		xyz[1] = grid[n+1];
+		xyz[2] = grid[n+2];
+		return true;
+	}
+
+	/* subdivision depth needed at pixel (i,j) */
+	public int depth(int i, int j)
+	{
+		return Depth;
+	}
+
+	abstract boolean compute(int i, int j, double xyz[]);
+
+	boolean separable()
+	{
+		return false;
+	}
+
+	void fill()
+	{
+		double g[] = new double[3*Width*Height];
+		boolean o[] = new boolean[Width*Height];
+		double xyz[] = new double[3];
+
+		for (int j = 0, n = 0; j < Height; j++)
+			for (int i = 0; i < Width; i++, n++) {
+				if (compute(i, j, xyz)) {
+					g[3*n] = xyz[0];
+					g[3*n+1] = xyz[1];
+					g[3*n+2] = xyz[2];
+				}
+				else o[n] = true;
+			}
+		off = o;
+		grid = g;
+	}
+
+	long bytes()
+	{
+		return (grid==null ? 0 : 25L*Width*Height)+16L*(Width+Height);
+	}
+
+	static int rowDepth(double scale1, int Height)
+	{
+		return 3*((int)(PlanetJ.log_2(scale1*Height)))+3;
+	}
+
+	/* Depth is chosen for the footprint of a pixel at the centre of the */
+	/* view; where a pixel covers f times that length of ground, three */
+	/* levels per doubling of f are not needed. Never goes deeper than Depth. */
+	/* Only with --footprint-depth, as coarser pixels can change colour. */
+	int footprintDepth(double f)
+	{
+		if (!footprint || !(f>1.0)) return Depth;
+		return Math.max(0, Depth-(int)(3.0*PlanetJ.log_2(f)));
+	}
+
+	/* Mercator, Peters and square projections */
+	static class Cylinder extends Geometry
+	{
+		boolean on[];
+		double ry[], rcos[];
+		int rdepth[];
+		double ccos[], csin[];
+
+		Cylinder(PlanetJ p)
+		{
+			super(p);
+			double y,cos2,scale1,theta1;
+			int k = 0;
+
+			if (p.view=='m') {
+				y = Math.sin(p.baseLatitude);
+				y = (1.0+y)/(1.0-y);
+				y = 0.5*Math.log(y);
+				k = (int)(0.5*y*Width*scale/PlanetJ.PI);
+			}
+			else if (p.view=='p') {
+				y = 2.0*Math.sin(p.baseLatitude);
+				k = (int)(0.5*y*Width*scale/PlanetJ.PI);
+			}
+			else k = (int)(p.baseLatitude*Width*scale/PlanetJ.PI);
+
+			on = new boolean[Height];
+			ry = new double[Height];
+			rcos = new double[Height];
+			rdepth = new int[Height];
+			for (int j = 0; j < Height; j++) {
+				if (p.view=='m') {
+					y = PlanetJ.PI*(2.0*(j-k)-Height)/Width/scale;
+					y = Math.exp(2.*y);
+					y = (y-1.)/(y+1.);
+					scale1 = scale*Width/Height/Math.sqrt(1.0-y*y)/PlanetJ.PI;
+					cos2 = Math.sqrt(1.0-y*y);
+					on[j] = true;
+				}
+				else if (p.view=='p') {
+					y = 0.5*PlanetJ.PI*(2.0*(j-k)-Height)/Width/scale;
+					if (Math.abs(y)>1.0) continue;
+					cos2 = Math.sqrt(1.0-y*y);
+					if (!(cos2>0.0)) continue;
+					scale1 = scale*Width/Height/cos2/PlanetJ.PI;
+					on[j] = true;
+				}
+				else {
+					y = (2.0*(j-k)-Height)/Width/scale*PlanetJ.PI;
+					if (Math.abs(y)>=0.5*PlanetJ.PI) continue;
+					cos2 = Math.cos(y);
+					if (!(cos2>0.0)) continue;
+					scale1 = scale*Width/Height/cos2/PlanetJ.PI;
+					y = Math.sin(y);
+					on[j] = true;
+				}
+				ry[j] = y;
+				rcos[j] = cos2;
+				rdepth[j] = rowDepth(scale1, Height);
+			}
+
+			ccos = new double[Width];
+			csin = new double[Width];
+			for (int i = 0; i < Width ; i++) {
+				theta1 = p.baseLongitude-0.5*PlanetJ.PI+PlanetJ.PI*(2.0*i-Width)/Width/scale;
+				ccos[i] = Math.cos(theta1);
+				csin[i] = Math.sin(theta1);
+			}
+		}
+
+		boolean separable()
+		{
+			return true;
+		}
+
+		boolean compute(int i, int j, double xyz[])
+		{
+			if (!on[j]) return false;
+			xyz[0] = ccos[i]*rcos[j];
+			xyz[1] = ry[j];
+			xyz[2] = -csin[i]*rcos[j];
+			return true;
+		}
+
+		public int depth(int i, int j)
+		{
+			return rdepth[j];
+		}
+	}
+
+	static class Mollweide extends Geometry
+	{
+		double baseLongitude;
+		boolean on[];
+		double ry[], rcos[], rzz[];
+		int rdepth[];
+
+		Mollweide(PlanetJ p)
+		{
+			super(p);
+			double y,y1,zz,cos2;
+
+			baseLongitude = p.baseLongitude;
+			on = new boolean[Height];
+			ry = new double[Height];
+			rcos = new double[Height];
+			rzz = new double[Height];
+			rdepth = new int[Height];
+			for (int j = 0; j < Height; j++) {
+				y1 = 2*(2.0*j-Height)/Width/scale;
+				if (Math.abs(y1)>=1.0) continue;
+				zz = Math.sqrt(1.0-y1*y1);
+				y = 2.0/PlanetJ.PI*(y1*zz+Math.asin(y1));
+				cos2 = Math.sqrt(1.0-y*y);
+				if (!(cos2>0.0)) continue;
+				on[j] = true;
+				ry[j] = y;
+				rcos[j] = cos2;
+				rzz[j] = zz;
+				rdepth[j] = rowDepth(scale*Width/Height/cos2/PlanetJ.PI, Height);
+			}
+		}
+
+		boolean compute(int i, int j, double xyz[])
+		{
+			if (!on[j]) return false;
+			double theta1 = PlanetJ.PI/rzz[j]*(2.0*i-Width)/Width/scale;
+			if (Math.abs(theta1)>PlanetJ.PI) return false;
+			theta1 += baseLongitude-0.5*PlanetJ.PI;
+			xyz[0] = Math.cos(theta1)*rcos[j];
+			xyz[1] = ry[j];
+			xyz[2] = -Math.sin(theta1)*rcos[j];
+			return true;
+		}
+
+		public int depth(int i, int j)
+		{
+			return rdepth[j];
+		}
+	}
+
+	static class Sinusoid extends Geometry
+	{
+		double baseLongitude;
+		boolean on[];
+		double rsin[], rcos[];
+		int rdepth[];
+
+		Sinusoid(PlanetJ p)
+		{
+			super(p);
+			double y,cos2;
+			int k;
+
+			baseLongitude = p.baseLongitude;
+			k = (int)(p.baseLatitude*Width*scale/PlanetJ.PI);
+			on = new boolean[Height];
+			rsin = new double[Height];
+			rcos = new double[Height];
+			rdepth = new int[Height];
+			for (int j = 0; j < Height; j++) {
+				y = (2.0*(j-k)-Height)/Width/scale*PlanetJ.PI;
+				if (Math.abs(y)>=0.5*PlanetJ.PI) continue;
+				cos2 = Math.cos(y);
+				if (!(cos2>0.0)) continue;
+				on[j] = true;
+				rsin[j] = Math.sin(y);
+				rcos[j] = cos2;
+				rdepth[j] = rowDepth(scale*Width/Height/cos2/PlanetJ.PI, Height);
+			}
+		}
+
+		boolean compute(int i, int j, double xyz[])
+		{
+			if (!on[j]) return false;
+			double cos2 = rcos[j];
+			int l = i*12/Width;
+			double l1 = l*Width/12.0;
+			double i1 = i-l1;
+			double theta2 = baseLongitude-0.5*PlanetJ.PI+PlanetJ.PI*(2.0*l1-Width)/Width/scale;
+			double theta1 = (PlanetJ.PI*(2.0*i1-Width/12)/Width/scale)/cos2;
+			if (Math.abs(theta1)>PlanetJ.PI/12.0) return false;
+			xyz[0] = Math.cos(theta1+theta2)*cos2;
+			xyz[1] = rsin[j];
+			xyz[2] = -Math.sin(theta1+theta2)*cos2;
+			return true;
+		}
+
+		public int depth(int i, int j)
+		{
+			return rdepth[j];
+		}
+	}
+
+	/* stereographic, orthographic, gnomonic and area preserving azimuthal */
+	static class Azimuthal extends Geometry
+	{
+		char view;
+		double cla, sla, clo, slo;
+
+		Azimuthal(PlanetJ p)
+		{
+			super(p);
+			view = p.view;
+			cla = p.cla;
+			sla = p.sla;
+			clo = p.clo;
+			slo = p.slo;
+		}
+
+		boolean compute(int i, int j, double xyz[])
+		{
+			double x,y,z,zz;
+
+			x = (2.0*i-Width)/Height/scale;
+			y = (2.0*j-Height)/Height/scale;
+			switch (view) {
+			case 's':
+				z = x*x+y*y;
+				zz = 0.25*(4.0+z);
+				x = x/zz;
+				y = y/zz;
+				z = (1.0-0.25*z)/zz;
+				break;
+			case 'o':
+				if (x*x+y*y>1.0) return false;
+				z = Math.sqrt(1.0-x*x-y*y);
+				break;
+			case 'g':
+				zz = Math.sqrt(1.0/(1.0+x*x+y*y));
+				x = x*zz;
+				y = y*zz;
+				z = Math.sqrt(1.0-x*x-y*y);
+				break;
+			default:
+				zz = x*x+y*y;
+				z = 1.0-0.5*zz;
+				if (z<-1.0) return false;
+				zz = Math.sqrt(1.0-0.25*zz);
+				x = x*zz;
+				y = y*zz;
+				break;
+			}
+			xyz[0] = clo*x+slo*sla*y+slo*cla*z;
+			xyz[1] = cla*y-sla*z;
+			xyz[2] = -slo*x+clo*sla*y+clo*cla*z;
+			return true;
+		}
+
+		/* Only the orthographic view spreads pixels over more ground away */
+		/* from the centre: by 1/z radially, so 1/sqrt(z) on average. The */
+		/* stereographic and gnomonic views magnify towards the edge and the */
+		/* area preserving one keeps the area of a pixel, so they keep Depth. */
+		public int depth(int i, int j)
+		{
+			if (view!='o') return Depth;
+
+			double x = (2.0*i-Width)/Height/scale;
+			double y = (2.0*j-Height)/Height/scale;
+			double zz = 1.0-x*x-y*y;
+			if (!(zz>0.0)) return Depth;
+			return footprintDepth(Math.pow(zz, -0.25));
+		}
+	}
+
+	static class Conical extends Geometry
+	{
+		double baseLongitude;
+		boolean north;
+		double k1, c, y2;
+
+		Conical(PlanetJ p)
+		{
+			super(p);
+			baseLongitude = p.baseLongitude;
+			north = p.baseLatitude>0;
+			k1 = 1.0/Math.sin(p.baseLatitude);
+			c = k1*k1;
+			y2 = Math.sqrt(c*(1.0-Math.sin(p.baseLatitude/k1))/(1.0+Math.sin(p.baseLatitude/k1)));
+		}
+
+		boolean compute(int i, int j, double xyz[])
+		{
+			double x,y,zz,theta1,theta2,cos2;
+
+			x = (2.0*i-Width)/Height/scale;
+			y = (2.0*j-Height)/Height/scale;
+			if (north) {
+				y += y2;
+				zz = x*x+y*y;
+				if (zz==0.0) theta1 = 0.0; else theta1 = k1*Math.atan2(x,y);
+			}
+			else {
+				y -= y2;
+				zz = x*x+y*y;
+				if (zz==0.0) theta1 = 0.0; else theta1 = -k1*Math.atan2(x,-y);
+			}
+			if (theta1<-PlanetJ.PI || theta1>PlanetJ.PI) return false;
+			theta1 += baseLongitude-0.5*PlanetJ.PI; /* theta1 is longitude */
+			theta2 = k1*Math.asin((zz-c)/(zz+c)); /* theta2 is latitude */
+			if (theta2 > 0.5*PlanetJ.PI || theta2 < -0.5*PlanetJ.PI) return false;
+			cos2 = Math.cos(theta2);
+			xyz[0] = Math.cos(theta1)*cos2;
+			xyz[1] = Math.sin(theta2);
+			xyz[2] = -Math.sin(theta1)*cos2;
+			return true;
+		}
+
+		/* The projection is conformal; d(latitude)/d(radius) works out */
+		/* to 2c/(zz+c), which is at most 2 (at the apex of the cone). */
+		public int depth(int i, int j)
+		{
+			double x = (2.0*i-Width)/Height/scale;
+			double y = (2.0*j-Height)/Height/scale+(north ? y2 : -y2);
+			return footprintDepth(2.0*c/(x*x+y*y+c));
+		}
+	}
+}
@@ -0,0 +1,37 @@
+package planetj;
+
+/* Draws the latitude and longitude lines collected while projecting. */
+
+public class Grid implements IPostStage
+{
+	public GridMask mask;
+	public int colour = PlanetJ.BLACK;
+
+	public Grid(GridMask mask)
+	{
+		this.mask = mask;
+	}
+
+	public int channel()
+	{
+		return COLOURS;
+	}
+
+	public int reach()
+	{
+		return 0;
+	}
+
+	public void setup(PlanetJ p)
+	{
+	}
+
+	public void apply(int in[][], int r, int i, int out[])
+	{
+		int n = mask.size(i);
+		int rows[] = mask.column(i);
+
+		for (int k=0; k<n; k++)
+			out[rows[k]] = colour;
+	}
+}
@@ -0,0 +1,60 @@
+package planetj;
+
+import java.util.Arrays;
+
+/* The pixels covered by grid lines, kept as a sorted list of rows per */
+/* column so it only costs memory in proportion to the lines drawn. */
+
+public class GridMask
+{
+	int w, h;
+	int rows[][];
+	int count[];
+	boolean sorted[];
+
+	public GridMask(int w, int h)
+	{
+		this.w = w;
+		this.h = h;
+		rows = new int[w][];
+		count = new int[w];
+		sorted = new boolean[w];
+	}
+
+	public void add(int i, int j)
+	{
+		if (i<0 || i>=w || j<0 || j>=h) return;
+
+		if (rows[i]==null) rows[i] = new int[8];
+		else if (count[i]==rows[i].length) rows[i] = Arrays.copyOf(rows[i], 2*count[i]);
+		rows[i][count[i]++] = j;
+		sorted[i] = false;
+	}
+
+	public boolean isEmpty()
+	{
+		for (int i=0; i<w; i++)
+			if (count[i]>0) return false;
+		return true;
+	}
+
+	/* number of rows set in column i; column(i) holds them in order */
+	public int size(int i)
+	{
+		if (!sorted[i] && count[i]>0)
+		{
+			Arrays.sort(rows[i], 0, count[i]);
+			int n = 1;
+			for (int k=1; k<count[i]; k++)
+				if (rows[i][k]!=rows[i][n-1]) rows[i][n++] = rows[i][k];
+			count[i] = n;
+		}
+		sorted[i] = true;
+		return count[i];
+	}
+
+	public int[] column(int i)
+	{
+		return rows[i];
+	}
+}
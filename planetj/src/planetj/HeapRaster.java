@@ -0,0 +1,53 @@
+package planetj;
+
+/* A raster in an array per column on the Java heap. */
+
+public class HeapRaster implements IRaster
+{
+	int data[][];
+	int w, h;
+
+	public HeapRaster(int w, int h)
+	{
+		this.w = w;
+		this.h = h;
+		data = new int[w][];
+		for (int i=0; i<w; i++)
+			data[i] = new int[h];
+	}
+
+	public int width()
+	{
+		return w;
+	}
+
+	public int height()
+	{
+		return h;
+	}
+
+	public int get(int i, int j)
+	{
+		return data[i][j];
+	}
+
+	public void set(int i, int j, int v)
+	{
+		data[i][j] = v;
+	}
+
+	public void read(int i, int j, int c[], int off, int n)
+	{
+		System.arraycopy(data[i], j, c, off, n);
+	}
+
+	public void write(int i, int j, int c[], int off, int n)
+	{
+		System.arraycopy(c, off, data[i], j, n);
+	}
+
+	public void close()
+	{
+		data = null;
+	}
+}
@@ -0,0 +1,7 @@
+package planetj;
+
+public interface IBand
+{
+	/* work on the indices from (inclusive) to to (exclusive) */
+	public void run(int band, int from, int to);
+}
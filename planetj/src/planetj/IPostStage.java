@@ -0,0 +1,20 @@
+package planetj;
+
+public interface IPostStage
+{
+	public static final int COLOURS = 0;
+	public static final int SHADES = 1;
+
+	/* the map the stage rewrites, COLOURS or SHADES */
+	public int channel();
+
+	/* how many columns on either side of a pixel the stage looks at */
+	public int reach();
+
+	public void setup(PlanetJ planet);
+
+	/* rewrite column i in out[], which holds the column as left by the */
+	/* previous stage. in[c] is column i as rendered, in[c-k] and in[c+k] */
+	/* its neighbours up to reach() columns away, null beyond the border */
+	public void apply(int in[][], int c, int i, int out[]);
+}
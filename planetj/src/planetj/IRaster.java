@@ -0,0 +1,19 @@
+package planetj;
+
+/* A Width x Height map of ints, stored column by column. */
+
+public interface IRaster
+{
+	public int width();
+	public int height();
+
+	public int get(int i, int j);
+	public void set(int i, int j, int v);
+
+	/* copy n values of column i, starting at row j, to or from c[off..] */
+	public void read(int i, int j, int c[], int off, int n);
+	public void write(int i, int j, int c[], int off, int n);
+
+	/* release the storage, the raster must not be used afterwards */
+	public void close();
+}
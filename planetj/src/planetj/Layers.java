@@ -0,0 +1,162 @@
+package planetj;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/* Elevation, temperature, moisture and biome of every pixel, worked out */
+/* from the altitude and latitude planet1() gives while the map renders, */
+/* so the climate of a planet does not need passes of its own. */
+
+/* Temperature is in degrees, 30 at the equator at sea level, falling */
+/* with the fourth power of the sine of the latitude to -25 at the poles */
+/* and by 240 per unit of altitude on land, so it is 0 at the equator at */
+/* the snow line of the alternative colours (.125). Moisture is 0 to 1, */
+/* wet at the equator and at 60 degrees, dry at 30 degrees and the poles */
+/* (the cells of the winds, as cos 6 latitude), drier with height and 1 */
+/* on the sea. The biome follows from both. */
+
+/* --layers NAME writes NAME.elevation.f32, NAME.temperature.f32 and */
+/* NAME.moisture.f32 as big-endian floats, NaN for the background, and */
+/* NAME.biome.u8 as bytes, BACK for the background, all row by row. */
+/* For contours and tile files alone only the elevation is kept. */
+
+public class Layers
+{
+	public static final int OCEAN = 0;
+	public static final int SEA_ICE = 1;
+	public static final int ICE = 2;
+	public static final int TUNDRA = 3;
+	public static final int TAIGA = 4;
+	public static final int GRASSLAND = 5;
+	public static final int FOREST = 6;
+	public static final int DESERT = 7;
+	public static final int SAVANNA = 8;
+	public static final int RAINFOREST = 9;
+	public static final int BACK = 255;
+
+	public static final String NAMES[] = { "ocean", "sea ice", "ice", "tundra", "taiga",
+		"grassland", "forest", "desert", "savanna", "rainforest" };
+
+	static final int STRIP = 1<<22; /* pixels read per strip when saving */
+
+	public IRaster elevation, temperature, moisture, biome; /* the last three null without climate */
+
+	public Layers(PlanetJ p, boolean climate)
+	{
+		elevation = p.raster(4);
+		if (climate)
+		{
+			temperature = p.raster(4);
+			moisture = p.raster(4);
+			biome = p.raster(1);
+		}
+	}
+
+	/* releases the rasters, the layers must not be used afterwards */
+	void close()
+	{
+		elevation.close();
+		if (temperature!=null)
+		{
+			temperature.close();
+			moisture.close();
+			biome.close();
+		}
+	}
+
+	void set(int i, int j, double alt, double y)
+	{
+		elevation.set(i, j, Float.floatToRawIntBits((float)alt));
+		if (biome==null) return;
+
+		float t = (float)temperature(alt, y), m = (float)moisture(alt, y);
+		temperature.set(i, j, Float.floatToRawIntBits(t));
+		moisture.set(i, j, Float.floatToRawIntBits(m));
+		biome.set(i, j, biome(alt, t, m));
+	}
+
+	void back(int i, int j)
+	{
+		int nan = Float.floatToRawIntBits(Float.NaN);
+		elevation.set(i, j, nan);
+		if (biome==null) return;
+
+		temperature.set(i, j, nan);
+		moisture.set(i, j, nan);
+		biome.set(i, j, BACK);
+	}
+
+	/* at altitude alt and y the sine of the latitude, as planet1() has it */
+	public static double temperature(double alt, double y)
+	{
+		double y2 = y*y;
+		return 30.0-55.0*y2*y2-240.0*Math.max(alt, 0.0);
+	}
+
+	public static double moisture(double alt, double y)
+	{
+		if (alt<=0.0) return 1.0;
+
+		/* cos 6 latitude from cos^2 latitude = 1-y^2 */
+		double c2 = 1.0-y*y;
+		double cells = ((32.0*c2-48.0)*c2+18.0)*c2-1.0;
+		return (0.5+0.5*cells)/(1.0+8.0*alt);
+	}
+
+	public static int biome(double alt, double t, double m)
+	{
+		if (alt<=0.0) return (t<-10.0 ? SEA_ICE : OCEAN);
+		if (t<-10.0) return ICE;
+		if (t<0.0) return TUNDRA;
+		if (t<8.0) return (m<0.3 ? TUNDRA : TAIGA);
+		if (t<20.0) return (m<0.25 ? DESERT : (m<0.5 ? GRASSLAND : FOREST));
+		return (m<0.25 ? DESERT : (m<0.6 ? SAVANNA : RAINFOREST));
+	}
+
+	public void save(String name)
+	{
+		write(elevation, new File(name+".elevation.f32"), 4);
+		write(temperature, new File(name+".temperature.f32"), 4);
+		write(moisture, new File(name+".moisture.f32"), 4);
+		write(biome, new File(name+".biome.u8"), 1);
+	}
+
+	/* row by row, a strip at a time as the rasters are stored by column */
+	static void write(IRaster r, File f, int bytes)
+	{
+		int w = r.width(), h = r.height();
+		int rows = PlanetJ.max(1, PlanetJ.min(h, STRIP/PlanetJ.max(1, w)));
+		int v[] = new int[w*rows];
+
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), 1<<16));
+			try
+			{
+				for (int j0=0; j0<h; j0+=rows)
+				{
+					int n = PlanetJ.min(rows, h-j0);
+					for (int i=0; i<w; i++)
+						r.read(i, j0, v, i*n, n);
+					for (int l=0; l<n; l++)
+						for (int i=0; i<w; i++)
+						{
+							if (bytes==4) out.writeInt(v[i*n+l]);
+							else out.writeByte(v[i*n+l]);
+						}
+				}
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot write layer: "+f, e);
+		}
+	}
+}
@@ -0,0 +1,131 @@
+package planetj;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/* A raster in a memory-mapped scratch file, so maps far larger than the */
+/* heap can be rendered with the page cache doing the buffering. */
+
+/* Values take 1 (unsigned), 2 (signed) or 4 bytes. The file is mapped */
+/* in chunks of 1 GB, as a single buffer cannot go beyond 2 GB; columns */
+/* are contiguous, so a sweep along a column stays within a few pages. */
+
+public class MappedRaster implements IRaster
+{
+	static final int CHUNK_BITS = 30;
+	static final long CHUNK_MASK = (1L<<CHUNK_BITS)-1;
+
+	File file;
+	RandomAccessFile raf;
+	MappedByteBuffer chunks[];
+	int w, h, bytes, shift;
+
+	public MappedRaster(File dir, int w, int h, int bytes)
+	{
+		if (bytes!=1 && bytes!=2 && bytes!=4)
+			throw new IllegalArgumentException("Bytes per value must be 1, 2 or 4: "+bytes);
+
+		this.w = w;
+		this.h = h;
+		this.bytes = bytes;
+		shift = (bytes==1 ? 0 : bytes==2 ? 1 : 2);
+
+		long size = (long)w*h<<shift;
+		try
+		{
+			file = File.createTempFile("planetj", ".raster", dir);
+			file.deleteOnExit();
+			raf = new RandomAccessFile(file, "rw");
+			raf.setLength(size);
+
+			FileChannel fc = raf.getChannel();
+			chunks = new MappedByteBuffer[(int)((size+CHUNK_MASK)>>CHUNK_BITS)];
+			for (int k=0; k<chunks.length; k++)
+			{
+				long at = (long)k<<CHUNK_BITS;
+				chunks[k] = fc.map(FileChannel.MapMode.READ_WRITE, at, Math.min(CHUNK_MASK+1, size-at));
+			}
+		}
+		catch (IOException e)
+		{
+			close();
+			throw new IllegalArgumentException("Cannot map raster in: "+dir, e);
+		}
+	}
+
+	public int width()
+	{
+		return w;
+	}
+
+	public int height()
+	{
+		return h;
+	}
+
+	public int get(int i, int j)
+	{
+		long at = ((long)i*h+j)<<shift;
+		MappedByteBuffer b = chunks[(int)(at>>>CHUNK_BITS)];
+		int k = (int)(at&CHUNK_MASK);
+
+		switch (bytes) {
+		case 1:
+			return b.get(k)&0xff;
+		case 2:
+			return b.getShort(k);
+		default:
+			return b.getInt(k);
+		}
+	}
+
+	public void set(int i, int j, int v)
+	{
+		long at = ((long)i*h+j)<<shift;
+		MappedByteBuffer b = chunks[(int)(at>>>CHUNK_BITS)];
+		int k = (int)(at&CHUNK_MASK);
+
+		switch (bytes) {
+		case 1:
+			b.put(k, (byte)v);
+			break;
+		case 2:
+			b.putShort(k, (short)v);
+			break;
+		default:
+			b.putInt(k, v);
+			break;
+		}
+	}
+
+	/* only absolute gets and puts, so threads can share the buffers */
+	public void read(int i, int j, int c[], int off, int n)
+	{
+		for (int l=0; l<n; l++)
+			c[off+l] = get(i, j+l);
+	}
+
+	public void write(int i, int j, int c[], int off, int n)
+	{
+		for (int l=0; l<n; l++)
+			set(i, j+l, c[off+l]);
+	}
+
+	public void close()
+	{
+		chunks = null;
+		try
+		{
+			if (raf!=null) raf.close();
+		}
+		catch (IOException e)
+		{
+			/* the file goes away on exit anyway */
+		}
+		raf = null;
+		if (file!=null) file.delete();
+	}
+}
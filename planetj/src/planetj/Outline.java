@@ -0,0 +1,67 @@
+package planetj;
+
+/* Marks sea pixels that have land within width pixels (the coastline). */
+
+public class Outline implements IPostStage
+{
+	public int width = 1; /* --edge-width rejects less, a smaller one set here counts as 1 */
+	public int colour = PlanetJ.BLACK;
+
+	int w, h, blue1, land0;
+
+	public Outline()
+	{
+	}
+
+	public Outline(int width, int colour)
+	{
+		this.width = width;
+		this.colour = colour;
+	}
+
+	public int channel()
+	{
+		return COLOURS;
+	}
+
+	public int reach()
+	{
+		return PlanetJ.max(1, width);
+	}
+
+	public void setup(PlanetJ p)
+	{
+		w = p.Width;
+		h = p.Height;
+		blue1 = p.BLUE1;
+		land0 = p.LAND0;
+	}
+
+	public void apply(int in[][], int r, int i, int out[])
+	{
+		if (i<=0 || i>=w-1) return;
+
+		int c[] = in[r];
+
+		for (int j=1; j<h-1; j++)
+		{
+			int v = c[j];
+			if (v>=PlanetJ.BLUE0 && v<=blue1 && coast(in, r, j))
+				out[j] = colour;
+		}
+	}
+
+	boolean coast(int in[][], int r, int j)
+	{
+		int j0 = PlanetJ.max(0, j-r), j1 = PlanetJ.min(h-1, j+r);
+
+		for (int k=0; k<in.length; k++)
+		{
+			int c[] = in[k];
+			if (c==null) continue;
+			for (int l=j0; l<=j1; l++)
+				if (c[l]>=land0) return true;
+		}
+		return false;
+	}
+}
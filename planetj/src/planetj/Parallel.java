@@ -0,0 +1,90 @@
+package planetj;
+
+import java.util.Vector;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/* Splits an index range into contiguous bands and runs them concurrently. */
+/* The calling thread always takes the first band itself, so a single band */
+/* never leaves the caller. */
+
+public class Parallel
+{
+	static ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		int n = 0;
+
+		public synchronized Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "planetj-"+(n++));
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	public static int threads(int threads)
+	{
+		if(threads>0) return threads;
+		return Runtime.getRuntime().availableProcessors();
+	}
+
+	public static int bands(int threads, int count)
+	{
+		return PlanetJ.max(1, PlanetJ.min(threads(threads), count));
+	}
+
+	public static int from(int band, int bands, int count)
+	{
+		return (int)((long)count*band/bands);
+	}
+
+	public static void run(int threads, int count, final IBand task)
+	{
+		final int bands = bands(threads, count);
+
+		if(bands==1)
+		{
+			task.run(0, 0, count);
+			return;
+		}
+
+		Vector<Future<?>> pending = new Vector<Future<?>>();
+		for(int b=1; b<bands; b++)
+		{
+			final int band = b;
+			final int from = from(b, bands, count);
+			final int to = from(b+1, bands, count);
+			pending.add(pool.submit(new Runnable()
+			{
+				public void run()
+				{
+					task.run(band, from, to);
+				}
+			}));
+		}
+
+		task.run(0, 0, from(1, bands, count));
+
+		for(int b=0; b<pending.size(); b++)
+		{
+			try
+			{
+				pending.get(b).get();
+			}
+			catch (InterruptedException e)
+			{
+				Thread.currentThread().interrupt();
+				throw new RuntimeException(e);
+			}
+			catch (ExecutionException e)
+			{
+				if(e.getCause() instanceof RuntimeException) throw (RuntimeException)e.getCause();
+				if(e.getCause() instanceof Error) throw (Error)e.getCause();
+				throw new RuntimeException(e.getCause());
+			}
+		}
+	}
+}
@@ -1,8 +1,11 @@
 package planetj;
 
 import java.awt.image.BufferedImage;
+import java.io.BufferedReader;
 import java.io.File;
+import java.io.FileReader;
 import java.io.IOException;
+import java.util.BitSet;
 import java.util.Date;
 import java.util.Properties;
 import java.util.Random;
@@ -38,7 +41,7 @@ import javax.imageio.ImageIO;
 /* can yield very different planets. */
 /* The primitive user interface is a result of portability concerns */
 
-public class PlanetJ implements IPlanet
+public class PlanetJ implements IPlanet, Cloneable
 {
 	public static int min(int x, int y)
 	{ 
@@ -70,28 +73,30 @@ public class PlanetJ implements IPlanet
 		{
 			for(int iy=0; iy<Height; iy++)
 			{
-				int n = col[ix][iy];
-				int[] c = new int [] { rtable[n], gtable[n], btable[n]  };
-				if(doshade) 
-				{
-					int s = shades[ix][iy];
-					for(int q=0; q<3; q++)
-					{
-						c[q] = s*c[q]/150;
-						if (c[q]>255) c[q]=255;
-					}
-				}
-				bufferedImage.getRaster().setPixel(ix, iy, c);
+				bufferedImage.setRGB(ix, iy, rgb(col.get(ix, iy), shades.get(ix, iy)));
 			}
 		}
 		
 		return bufferedImage;
 	}
+
+	/* the packed RGB value of colour index n with shade s */
+	public int rgb(int n, int s)
+	{
+		int[] c = new int [] { rtable[n], gtable[n], btable[n]  };
+		if(doshade) 
+		{
+			for(int q=0; q<3; q++)
+			{
+				c[q] = s*c[q]/150;
+				if (c[q]>255) c[q]=255;
+			}
+		}
+		return (c[0]<<16)|(c[1]<<8)|c[2];
+	}
 	
 	public void save(String f)
 	{
-		BufferedImage bufferedImage = makeRgbImage();
-		
 		String image_type = "jpg";
 		if(f.toLowerCase().endsWith(".jpg") || f.toLowerCase().endsWith(".jpeg"))
 		{
@@ -110,9 +115,16 @@ public class PlanetJ implements IPlanet
 			throw new IllegalArgumentException("Unknown image extension: "+f);
 		}
 
+		if(image_type.equals("png"))
+		{
+			/* no BufferedImage, and deflated on all threads */
+			PngWriter.write(this, new File(f));
+			return;
+		}
+
 		try 
 		{
-			ImageIO.write(bufferedImage, image_type, new File(f));
+			ImageIO.write(makeRgbImage(), image_type, new File(f));
 		} 
 		catch (IOException e) 
 		{
@@ -196,23 +208,71 @@ public class PlanetJ implements IPlanet
 	public boolean latitudeColors; /* flag for latitude based colour */
 	public boolean do_outline;
 	public boolean do_bw;
+	public int edgeWidth = 1; /* pixels of sea that are marked along the coast */
+	public int edgeColor = BLACK; /* colour index used for the coast */
+	public int threads; /* worker threads, 0 uses all processors */
 	public boolean doshade;
-	public boolean doWaterShade;
+	public boolean doWaterShade; /* shade the sea as well, --water-shade */
 	public int waterShade = 128;
 	public int Depth; /* depth of subdivisions */
+	public int geometryCache = 64; /* MB kept for pixel geometry between renders */
+	public int treeCache = 32; /* MB for the top levels of the subdivision, 0 for none */
+	public TopTree topTree;
+	public ZoomSession zoom; /* set while a ZoomSession renders the view */
+	public String order = "scan"; /* pixel order: scan, morton or hilbert */
+	public long shortcutHits, shortcutMisses; /* planet1() calls that could or could not skip the top levels */
+	public long visits, splits, earlyStops; /* planet() calls above level 0, bisections and early stops; the rest turn the tetrahedron */
+	public long treeSteps; /* levels walked down the TopTree or a zoom session instead of bisected */
+	public Profile profile = new Profile();
+	public IRaster cost; /* levels bisected or walked down a tree per pixel, for --cost-map */
+	public String costMap; /* image of the work per pixel, "false" for none */
+	public volatile boolean cancelled; /* set by cancel() or an interrupt, the render stops at the next strip */
+	public long timeLimit; /* ms process() may take before rendering stops, 0 for no limit */
+	public long deadline; /* System.currentTimeMillis() at which rendering stops, 0 for none; set by process() from timeLimit */
+	public BitSet rowsDone; /* rows the last render finished, the rest are left as they were */
+	public double ymin, ymax; /* latitude range seen by the last render */
 	public double r1,r2,r3,r4; /* seeds */
 	public double cla, sla, clo, slo;
 
 
 	public int Width = 800, Height = 600;
 
-	public int col[][];
-	public int heights[][];
+	public IRaster col;
+	public IRaster heights;
+	public GridMask gridMask; /* grid lines, drawn after the other post-processing */
 	//	int cl0[60][30];
 
 	public int shade;
-	public int shades[][];
+	public IRaster shades;
+	public String rasterDir; /* directory for memory-mapped rasters, "false" keeps them on the heap */
+	public String checkpoint; /* file the rendered rows are kept in, "false" for none */
+	public int checkpointInterval = 60; /* seconds between checkpoints */
+	public int band, bands = 1; /* the band of rows this process renders, see Checkpoint */
+	public String merge; /* part files to assemble instead of rendering, "false" for none */
 	public double shadeAngle = 150.0; /* angle of "light" on bumpmap */
+	public double shadeSin, shadeCos; /* direction of the light, set by setup() */
+	public double normalNorth, normalEast; /* gradient direction found by the last shade() */
+	public boolean deferred; /* keep a G-buffer, so relight() can redo colours and shades */
+	public GBuffer gbuffer;
+	public String normalMap; /* file for the normal map, "false" for none */
+	public String pyramid; /* DeepZoom descriptor to write the map to as tiles, "false" for none */
+	public int tileSize = 256; /* pixels across a pyramid or tile file tile */
+	public String tiles; /* tile file to store elevation, colours and shades in, "false" for none */
+	public String admission = "stream"; /* what setup() does with a map that does not fit, see Estimate */
+	public int memoryLimit; /* MB of heap a map may take, 0 for about what the JVM has left */
+	public int pngLevel = -1; /* deflate level of PNG output, 0 to 9, -1 for the default */
+	public String layers; /* name the elevation, climate and biome layers are saved under, "false" for none */
+	public Layers layerData;
+	public String contours; /* file for coastlines and contours, "false" for none */
+	public double contourLevels[] = { 0.0 }; /* altitudes to trace, 0 is the coastline */
+	public double contourTolerance = 0.5; /* pixels a simplified line may stray */
+	public boolean fastMath; /* table driven powers, see FastMath */
+	public boolean floatPrecision; /* single precision geometry where it is good enough */
+	public boolean earlyTermination; /* stop subdividing once the colour is settled */
+	public boolean footprintDepth; /* subdivide each pixel for the ground it covers, see Geometry */
+	boolean early;
+	double earlyBelow, earlyAbove;
+	public FloatTerrain floatTerrain;
 	public double rseed, increment = 0.00000001;	
 
 	public int BLUE1, LAND0, LAND1, LAND2, LAND4;
@@ -224,6 +284,7 @@ public class PlanetJ implements IPlanet
 	public int white_r = 255,  white_g = 255,  white_b = 255;
 
 	public int rtable[] = new int[256], gtable[] = new int[256], btable[] = new int[256];
+	public ColorTable colorTable; /* alt2color() as a lookup table, built by setup() */
 
 	public int best = 500000;
 	public int weight[]= new int[30];
@@ -261,7 +322,7 @@ public class PlanetJ implements IPlanet
 
 		useAlternativeColors = Boolean.parseBoolean(prop.getProperty("-a", prop.getProperty("alt-colors", "false")));
 		
-		colorsname = prop.getProperty("-initialAltitude", prop.getProperty("map-file", "false"));
+		colorsname = prop.getProperty("-M", prop.getProperty("map-file", "false"));
 		world_file = prop.getProperty("-W", prop.getProperty("world-file", "false"));
 		ter_file = prop.getProperty("-T", prop.getProperty("ter-file", "false"));
 		
@@ -286,6 +347,18 @@ public class PlanetJ implements IPlanet
 			do_bw = true;
 		}
 
+		edgeWidth = Integer.parseInt(prop.getProperty("edge-width", "1"));
+		if (edgeWidth<1)
+		{
+			throw new IllegalArgumentException("Edge width must be at least 1: "+edgeWidth);
+		}
+
+		edgeColor = Integer.parseInt(prop.getProperty("edge-color", ""+BLACK));
+		if (edgeColor<0 || edgeColor>255)
+		{
+			throw new IllegalArgumentException("Edge colour must be a colour index from 0 to 255: "+edgeColor);
+		}
+
 		if(Boolean.parseBoolean(prop.getProperty("-C", prop.getProperty("lighter", "false"))))
 		{
 			lighter += 1;
@@ -300,21 +373,138 @@ public class PlanetJ implements IPlanet
 		
 		shadeAngle = Double.parseDouble(prop.getProperty("-A", prop.getProperty("shade-angle", "150.0")));
 
+		doWaterShade = Boolean.parseBoolean(prop.getProperty("water-shade", "false"));
+
+		fastMath = Boolean.parseBoolean(prop.getProperty("fast-math", "false"));
+
+		floatPrecision = prop.getProperty("precision", "double").equals("float");
+
+		earlyTermination = Boolean.parseBoolean(prop.getProperty("early-termination", "false"));
+
+		footprintDepth = Boolean.parseBoolean(prop.getProperty("footprint-depth", "false"));
+
 		view = prop.getProperty("-p", prop.getProperty("projection", "mercator")).charAt(0);
+
+		threads = Integer.parseInt(prop.getProperty("-t", prop.getProperty("threads", "0")));
+
+		geometryCache = Integer.parseInt(prop.getProperty("geometry-cache", "64"));
+
+		treeCache = Integer.parseInt(prop.getProperty("tree-cache", "32"));
+
+		order = prop.getProperty("order", "scan");
+
+		rasterDir = prop.getProperty("raster-dir", "false");
+
+		checkpoint = prop.getProperty("checkpoint", "false");
+
+		checkpointInterval = Integer.parseInt(prop.getProperty("checkpoint-interval", "60"));
+
+		String b = prop.getProperty("band", "0/1");
+		band = Integer.parseInt(b.substring(0, b.indexOf('/')).trim());
+		bands = Integer.parseInt(b.substring(b.indexOf('/')+1).trim());
+		if(bands<1 || band<0 || band>=bands)
+		{
+			throw new IllegalArgumentException("Band must be i/n with 0 <= i < n: "+b);
+		}
+
+		merge = prop.getProperty("merge", "false");
+
+		normalMap = prop.getProperty("normal-map", "false");
+
+		deferred = Boolean.parseBoolean(prop.getProperty("deferred", "false")) || !normalMap.equals("false");
+
+		pyramid = prop.getProperty("pyramid", "false");
+
+		tileSize = Integer.parseInt(prop.getProperty("tile-size", "256"));
+
+		costMap = prop.getProperty("cost-map", "false");
+
+		timeLimit = Long.parseLong(prop.getProperty("time-limit", "0"));
+
+		layers = prop.getProperty("layers", "false");
+
+		contours = prop.getProperty("contours", "false");
+
+		String levels[] = prop.getProperty("contour-levels", "0.0").split(",");
+		contourLevels = new double[levels.length];
+		for(int l=0; l<levels.length; l++)
+		{
+			contourLevels[l] = Double.parseDouble(levels[l].trim());
+		}
+
+		contourTolerance = Double.parseDouble(prop.getProperty("contour-tolerance", "0.5"));
+
+		tiles = prop.getProperty("tiles", "false");
+
+		admission = prop.getProperty("admission", "stream");
+
+		memoryLimit = Integer.parseInt(prop.getProperty("memory-limit", "0"));
+
+		pngLevel = Integer.parseInt(prop.getProperty("png-level", "-1"));
+		if (pngLevel<-1 || pngLevel>9)
+		{
+			throw new IllegalArgumentException("PNG level must be from 0 to 9, or -1: "+pngLevel);
+		}
 	
 	}
 	
 	public void setup()
 	{
-		if(useAlternativeColors)
-		{ 
-			copyColors(alt_colors);
+		long t0 = System.nanoTime();
+
+		/* a map set up again lets go of the old rasters, mapped files and all */
+		release();
+
+		/* before anything big is allocated */
+		Estimate.admit(this);
+
+		heights = raster(4);
+		col = raster(1);
+		shades = raster(1);
+		gridMask = new GridMask(Width, Height); /* so post-processing can run before process() */
+
+		if(deferred)
+		{
+			if(bands>1 || !merge.equals("false") || !checkpoint.equals("false"))
+			{
+				throw new IllegalArgumentException("The G-buffer is not kept in checkpoints, it cannot be used with bands, merges or checkpoints");
+			}
+			gbuffer = new GBuffer(this);
 		}
-		else
+
+		/* contours are traced on the elevation layer, tile files store it */
+		if((layers!=null && !layers.equals("false")) || (contours!=null && !contours.equals("false"))
+				|| (tiles!=null && !tiles.equals("false")))
 		{
-			copyColors(std_colors);
+			if(bands>1 || !merge.equals("false") || !checkpoint.equals("false"))
+			{
+				throw new IllegalArgumentException("The layers are not kept in checkpoints, layers, contours and tile files cannot be used with bands, merges or checkpoints");
+			}
+			layerData = new Layers(this, layers!=null && !layers.equals("false"));
 		}
-		
+
+		prepare();
+
+		cost = (costMap!=null && !costMap.equals("false") ? raster(4) : null);
+		profile.phase("setup", System.nanoTime()-t0);
+	}
+
+	/* closes the rasters left by an earlier setup() */
+	void release()
+	{
+		IRaster old[] = { heights, col, shades, cost };
+		for (int k=0; k<old.length; k++)
+			if (old[k]!=null) old[k].close();
+		if (gbuffer!=null) gbuffer.close();
+		if (layerData!=null) layerData.close();
+		heights = col = shades = cost = null;
+		gbuffer = null;
+		layerData = null;
+	}
+
+	/* the planet, its colours and the view, without any rasters */
+	public void prepare()
+	{
 		if (baseLongitude>180) baseLongitude -= 360;
 		
 		baseLongitude = baseLongitude*DEG2RAD;
@@ -325,17 +515,6 @@ public class PlanetJ implements IPlanet
 		slo = Math.sin(baseLongitude); 
 		clo = Math.cos(baseLongitude);
 
-		heights = new int[Width][];
-		col = new int[Width][];
-		shades = new int[Width][];
-		for (int i=0; i<Width; i++) 
-		{
-			heights[i] = new int[Height];
-			col[i] = new int[Height];
-			shades[i] = new int[Height];
-		}
-
-
 		if (view == 'c') {
 			if (baseLatitude == 0.0) view = 'm';
 			/* Conical approaches mercator when baseLatitude -> 0 */
@@ -343,21 +522,105 @@ public class PlanetJ implements IPlanet
 			/* Conical approaches stereo when baseLatitude -> +/- 90 */
 		}
 
-		setcolours();
+		colours();
+
+		/* the bound in settled() needs altitudeWeight <= 0.5, shading needs */
+		/* the final tetrahedron unless the sea is drawn flat, the G-buffer */
+		/* and the layers need every altitude exact */
+		earlyBelow = Double.NEGATIVE_INFINITY;
+		earlyAbove = Double.POSITIVE_INFINITY;
+		if (earlyTermination && altitudeWeight<=0.5 && gbuffer==null && layerData==null) {
+			if (!doshade || !doWaterShade) earlyBelow = Math.min(colorTable.below, 0.0);
+			if (!doshade) earlyAbove = colorTable.above;
+		}
+		early = (earlyBelow>Double.NEGATIVE_INFINITY || earlyAbove<Double.POSITIVE_INFINITY);
 
 		Depth = 3*((int)(log_2(scale*Height)))+6;
 
+		shadeSin = Math.sin(PI*shadeAngle/180.0);
+		shadeCos = Math.cos(PI*shadeAngle/180.0);
+
+		floatTerrain = (floatPrecision ? new FloatTerrain(this) : null);
+
 		r1 = rseed;
 
 		r1 = rand2(r1,r1);
 		r2 = rand2(r1,r1);
 		r3 = rand2(r1,r2);
 		r4 = rand2(r2,r3);
+
+		topTree = TopTree.get(this);
 	}
 	
+	/* the colour tables, from the colour options */
+	void colours()
+	{
+		if(useAlternativeColors)
+		{ 
+			copyColors(alt_colors);
+		}
+		else
+		{
+			copyColors(std_colors);
+		}
+
+		setcolours();
+		
+		if(colorsname!=null && !colorsname.equals("false"))
+		{
+			readcolours(colorsname);
+		}
+
+		colorTable = new ColorTable(this);
+	}
+
+	/* Redoes the colours and shades from the G-buffer after the colour, */
+	/* water or light options have changed, then the post-processing. */
+	/* Much faster than rendering again, as no terrain is generated. */
+	public void relight()
+	{
+		if (gbuffer==null)
+		{
+			throw new IllegalStateException("relight() needs a render with a G-buffer (--deferred)");
+		}
+
+		colours();
+		shadeSin = Math.sin(PI*shadeAngle/180.0);
+		shadeCos = Math.cos(PI*shadeAngle/180.0);
+
+		new PostProcessor()
+			.add(new Deferred(gbuffer, IPostStage.COLOURS))
+			.add(new Deferred(gbuffer, IPostStage.SHADES))
+			.run(this);
+		postProcessor().run(this);
+	}
+
+	/* colour indices and shades fit in a byte, heights need an int */
+	IRaster raster(int bytes)
+	{
+		int from = Parallel.from(band, bands, Height);
+		int rows = Parallel.from(band+1, bands, Height)-from;
+		IRaster r;
+
+		if(rasterDir!=null && !rasterDir.equals("false"))
+		{
+			r = new MappedRaster(new File(rasterDir), Width, rows, bytes);
+		}
+		else
+		{
+			r = new HeapRaster(Width, rows);
+		}
+		return (bands>1 ? new BandRaster(r, from, Height) : r);
+	}
+
 	public void process()
 	{
+		long t0 = System.nanoTime();
 		start=System.currentTimeMillis();
+		/* every render starts afresh, whatever stopped the last one */
+		cancelled = false;
+		deadline = (timeLimit>0 ? start+timeLimit : 0);
+		gridMask = new GridMask(Width, Height);
 		
 		switch (view) {
 
@@ -403,42 +666,43 @@ public class PlanetJ implements IPlanet
 
 		}
 
-		if (do_outline) makeoutline(do_bw);
+		long t1 = System.nanoTime();
+		profile.phase("render", t1-t0);
 
-		if (doshade) smoothshades();
+		/* a band is only post-processed once it is merged with the others, */
+		/* a cancelled map not at all */
+		if (bands==1 && !cancelled) postProcessor().run(this);
+		profile.phase("post-processing", System.nanoTime()-t1);
 	}
 	
-	void makeoutline(boolean doBw)
+	/* the stages applied to the map once it has been projected */
+	public PostProcessor postProcessor()
 	{
-		int i,j,k;
+		PostProcessor post = new PostProcessor();
 
-		int[] outx = new int[Width*Height];
-		int[] outy = new int[Width*Height];
-		k=0;
-		for (i=1; i<Width-1; i++)
-			for (j=1; j<Height-1; j++)
-				if ((col[i][j] >= BLUE0 && col[i][j] <= BLUE1) &&
-						(col[i-1][j] >= LAND0 || col[i+1][j] >= LAND0 ||
-								col[i][j-1] >= LAND0 || col[i][j+1] >= LAND0 ||
-								col[i-1][j-1] >= LAND0 || col[i-1][j+1] >= LAND0 ||
-								col[i+1][j-1] >= LAND0 || col[i+1][j+1] >= LAND0)) {
-					outx[k] = i; outy[k++] =j;
-				}
-		if (doBw)
-			for (i=0; i<Width; i++)
-				for (j=0; j<Height; j++)
-					if (col[i][j] != BLACK) col[i][j] = WHITE;
-		while (k-->0) col[outx[k]][outy[k]] = BLACK;
+		if (do_outline && do_bw) post.add(Recolour.bw());
+		if (do_outline) post.add(new Outline(edgeWidth, edgeColor));
+		if (gridMask!=null && !gridMask.isEmpty()) post.add(new Grid(gridMask));
+		if (doshade) post.add(new Smooth());
+		
+		return post;
+	}
+
+	void grid(int i, int j)
+	{
+		gridMask.add(i, j);
+	}
+
+	void makeoutline(boolean doBw)
+	{
+		PostProcessor post = new PostProcessor();
+		if (doBw) post.add(Recolour.bw());
+		post.add(new Outline(edgeWidth, edgeColor)).run(this);
 	}
 	
 	public void smoothshades()
 	{
-		int i,j;
-
-		for (i=0; i<Width-2; i++)
-			for (j=0; j<Height-2; j++)
-				shades[i][j] = (4*shades[i][j]+2*shades[i][j+1]
-				             +2*shades[i+1][j]+shades[i+1][j+2]+4)/9;
+		new PostProcessor().add(new Smooth()).run(this);
 	}
 	
 	void copyColors(int cTable[][])
@@ -586,6 +850,59 @@ public class PlanetJ implements IPlanet
 		}
 	}
 
+	/* Reads the palette from a map file. Each line holds a colour index */
+	/* and its red, green and blue values, all separated by spaces. The */
+	/* indices must increase, colours between them are interpolated and */
+	/* everything not covered keeps the built-in palette. Lines starting */
+	/* with # are ignored. */
+	void readcolours(String f)
+	{
+		int last = -1;
+
+		try
+		{
+			BufferedReader in = new BufferedReader(new FileReader(f));
+			try
+			{
+				String line;
+				while((line = in.readLine())!=null)
+				{
+					line = line.trim();
+					if(line.length()==0 || line.startsWith("#")) continue;
+
+					String v[] = line.split("\\s+");
+					if(v.length<4)
+					{
+						throw new IllegalArgumentException("Bad line in map file "+f+": "+line);
+					}
+					int n = Integer.parseInt(v[0]);
+					if(n<0 || n>255 || n<=last)
+					{
+						throw new IllegalArgumentException("Bad colour index in map file "+f+": "+line);
+					}
+					rtable[n] = Integer.parseInt(v[1]);
+					gtable[n] = Integer.parseInt(v[2]);
+					btable[n] = Integer.parseInt(v[3]);
+
+					for (int i=last+1; last>=0 && i<n; i++) {
+						rtable[i] = (rtable[last]*(n-i)+rtable[n]*(i-last))/(n-last);
+						gtable[i] = (gtable[last]*(n-i)+gtable[n]*(i-last))/(n-last);
+						btable[i] = (btable[last]*(n-i)+btable[n]*(i-last))/(n-last);
+					}
+					last = n;
+				}
+			}
+			finally
+			{
+				in.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot read map file: "+f, e);
+		}
+	}
+
 	public int alt2color(double alt, double x, double y, double z)
 	{
 		int colour;
@@ -655,10 +972,36 @@ public class PlanetJ implements IPlanet
 		return(colour);
 	}
 
+	/* a copy that shares the planet as set up but walks the subdivision */
+	/* on its own, with its own level 11 shortcut and counters, so another */
+	/* thread can call planet1() on it */
+	PlanetJ engine()
+	{
+		PlanetJ e;
+		try
+		{
+			e = (PlanetJ)clone();
+		}
+		catch (CloneNotSupportedException ex)
+		{
+			throw new IllegalStateException(ex);
+		}
+		e.ssDepth = -1;
+		e.visits = e.splits = e.earlyStops = e.treeSteps = e.shortcutHits = e.shortcutMisses = 0;
+		e.floatTerrain = (floatTerrain==null ? null : new FloatTerrain(e));
+		return e;
+	}
+
 	public double ssa,ssb,ssc,ssd, ssas,ssbs,sscs,ssds,
 	ssax,ssay,ssaz, ssbx,ssby,ssbz, sscx,sscy,sscz, ssdx,ssdy,ssdz;
+	public int ssDepth = -1; /* depth of the pixel the tetrahedron above was found for */
 
 	public double planet1(double x, double y, double z)
+	{
+		return planet1(x, y, z, Depth);
+	}
+
+	public double planet1(double x, double y, double z, int depth)
 	{
 		double abx,aby,abz, acx,acy,acz, adx,ady,adz, apx,apy,apz;
 		double bax,bay,baz, bcx,bcy,bcz, bdx,bdy,bdz, bpx,bpy,bpz;
@@ -667,7 +1010,7 @@ public class PlanetJ implements IPlanet
 		acx = sscx-ssax; acy = sscy-ssay; acz = sscz-ssaz;
 		adx = ssdx-ssax; ady = ssdy-ssay; adz = ssdz-ssaz;
 		apx = x-ssax; apy = y-ssay; apz = z-ssaz;
-		if ((adx*aby*acz+ady*abz*acx+adz*abx*acy
+		if (depth==ssDepth && (adx*aby*acz+ady*abz*acx+adz*abx*acy
 				-adz*aby*acx-ady*abx*acz-adx*abz*acy)*
 				(apx*aby*acz+apy*abz*acx+apz*abx*acy
 						-apz*aby*acx-apy*abx*acz-apx*abz*acy)>0.0){
@@ -692,6 +1035,7 @@ public class PlanetJ implements IPlanet
 									-bpz*bcy*bdx-bpy*bcx*bdz-bpx*bcz*bdy)>0.0){
 						/* p is on same side of bcd as a */
 						/* Hence, p is inside tetrahedron */
+						shortcutHits++;
 						return(planet(ssa,ssb,ssc,ssd, ssas,ssbs,sscs,ssds,
 								ssax,ssay,ssaz, ssbx,ssby,ssbz,
 								sscx,sscy,sscz, ssdx,ssdy,ssdz,
@@ -700,6 +1044,10 @@ public class PlanetJ implements IPlanet
 				}
 			}
 		} /* otherwise */
+		if (depth>=11) ssDepth = depth;
+		shortcutMisses++;
+		if (zoom != null) return(zoom.planet(this, x, y, z, depth));
+		if (topTree != null) return(topTree.planet(this, x, y, z, depth));
 		return(planet(initialAltitude,initialAltitude,initialAltitude,initialAltitude,
 				/* initial altitude is initialAltitude on all corners of tetrahedron */
 				r1,r2,r3,r4,
@@ -711,7 +1059,7 @@ public class PlanetJ implements IPlanet
 				/* coordinates of vertices */
 				x,y,z,
 				/* coordinates of point we want colour of */
-				Depth));
+				depth));
 		/* subdivision depth */
 
 	}
@@ -732,9 +1080,10 @@ public class PlanetJ implements IPlanet
 		double ex, ey, ez, e, es;
 		double eax,eay,eaz, epx,epy,epz;
 		double ecx,ecy,ecz, edx,edy,edz;
-		double x1,y1,z1,x2,y2,z2,l1,tmp;
+		double l1;
 
 		if (level>0) {
+			visits++;
 			if (level==11) {
 				ssa=a; ssb=b; ssc=c; ssd=d; ssas=as; ssbs=bs; sscs=cs; ssds=ds;
 				ssax=ax; ssay=ay; ssaz=az; ssbx=bx; ssby=by; ssbz=bz;
@@ -780,8 +1129,17 @@ public class PlanetJ implements IPlanet
 							else {
 								ex = 0.5*(ax+bx); ey = 0.5*(ay+by); ez = 0.5*(az+bz);
 								es = rand2(as,bs);
-								if (lab>1.0) lab = Math.pow(lab,0.75);
-								e = 0.5*(a+b)+es*(altitudeWeight*Math.abs(a-b)+distanceWeight*Math.pow(lab,0.45));
+								if (fastMath) l1 = FastMath.distance(lab);
+								else {
+									if (lab>1.0) lab = Math.pow(lab,0.75);
+									l1 = Math.pow(lab,0.45);
+								}
+								if (early && level<11 && settled(a,b,c,d, level*distanceWeight*l1)) {
+									earlyStops++;
+									return((a+b+c+d)/4);
+								}
+								splits++;
+								e = 0.5*(a+b)+es*(altitudeWeight*Math.abs(a-b)+distanceWeight*l1);
 								eax = ax-ex; eay = ay-ey; eaz = az-ez;
 								epx = x-ex; epy = y-ey; epz = z-ez;
 								ecx = cx-ex; ecy = cy-ey; ecz = cz-ez;
@@ -804,31 +1162,70 @@ public class PlanetJ implements IPlanet
 			} 
 		}
 		else {
-			if (doshade) {
-				x1 = 0.25*(ax+bx+cx+dx);
-				x1 = a*(x1-ax)+b*(x1-bx)+c*(x1-cx)+d*(x1-dx);
-				y1 = 0.25*(ay+by+cy+dy);
-				y1 = a*(y1-ay)+b*(y1-by)+c*(y1-cy)+d*(y1-dy);
-				z1 = 0.25*(az+bz+cz+dz);
-				z1 = a*(z1-az)+b*(z1-bz)+c*(z1-cz)+d*(z1-dz);
-				l1 = Math.sqrt(x1*x1+y1*y1+z1*z1);
-				if (l1==0.0) l1 = 1.0;
-				tmp = Math.sqrt(1.0-y*y);
-				if (tmp<0.0001) tmp = 0.0001;
-				x2 = x*x1+y*y1+z*z1;
-				y2 = -x*y/tmp*x1+tmp*y1-z*y/tmp*z1;
-				z2 = -z/tmp*x1+x/tmp*z1;
-				shade =
-					(int)((-Math.sin(PI*shadeAngle/180.0)*y2-Math.cos(PI*shadeAngle/180.0)*z2)
-							/l1*48.0+128.0);
-				shade = (int)((shade - 128)/1.5)+128;
-				if (shade<10) shade = 10;
-				if (shade>255) shade = 255;
-			}
+			if (doshade || gbuffer!=null) shade = shade(a,b,c,d, ax,ay,az, bx,by,bz, cx,cy,cz, dx,dy,dz, x,y,z);
 			return((a+b+c+d)/4);
 		}
 	}
 
+	/* A split puts the new vertex at 0.5*(a+b)+es*(altitudeWeight*|a-b| */
+	/* +distanceWeight*l1) with |es| < 1, so with altitudeWeight <= 0.5 it */
+	/* lies within distanceWeight*l1 of the range of a and b. The longest */
+	/* edge is the one split, and the edges of both halves are no longer */
+	/* than it, so l1 never grows further down; the level splits still to */
+	/* come can take no altitude more than level*distanceWeight*l1 outside */
+	/* the range of a,b,c,d, and neither can their average. This bound */
+	/* holds, up to rounding: a stopped pixel gets the colour it would */
+	/* have had. planet() only asks below level 11, so planet1() still */
+	/* gets to keep its shortcut. */
+	/* true if no altitude within reach of a,b,c,d can change the colour */
+	boolean settled(double a, double b, double c, double d, double reach)
+	{
+		if (Math.max(Math.max(a,b),Math.max(c,d))+reach<=earlyBelow) return true;
+		if (Math.min(Math.min(a,b),Math.min(c,d))-reach>=earlyAbove) return true;
+		return false;
+	}
+
+	/* bump map shade of the final tetrahedron, lit from shadeAngle */
+	int shade(
+			double a, double b, double c, double d,
+			double ax, double ay, double az,
+			double bx, double by, double bz,
+			double cx, double cy, double cz,
+			double dx, double dy, double dz,
+			double x, double y, double z)
+	{
+		double x1,y1,z1,x2,y2,z2,l1,tmp;
+
+		x1 = 0.25*(ax+bx+cx+dx);
+		x1 = a*(x1-ax)+b*(x1-bx)+c*(x1-cx)+d*(x1-dx);
+		y1 = 0.25*(ay+by+cy+dy);
+		y1 = a*(y1-ay)+b*(y1-by)+c*(y1-cy)+d*(y1-dy);
+		z1 = 0.25*(az+bz+cz+dz);
+		z1 = a*(z1-az)+b*(z1-bz)+c*(z1-cz)+d*(z1-dz);
+		l1 = Math.sqrt(x1*x1+y1*y1+z1*z1);
+		if (l1==0.0) l1 = 1.0;
+		tmp = Math.sqrt(1.0-y*y);
+		if (tmp<0.0001) tmp = 0.0001;
+		x2 = x*x1+y*y1+z*z1;
+		y2 = -x*y/tmp*x1+tmp*y1-z*y/tmp*z1;
+		z2 = -z/tmp*x1+x/tmp*z1;
+		normalNorth = y2/l1;
+		normalEast = z2/l1;
+		return shade(normalNorth, normalEast);
+	}
+
+	/* the shade for a gradient direction with north and east components */
+	int shade(double north, double east)
+	{
+		int shade =
+			(int)((-shadeSin*north-shadeCos*east)
+					*48.0+128.0);
+		shade = (int)((shade - 128)/1.5)+128;
+		if (shade<10) shade = 10;
+		if (shade>255) shade = 255;
+		return shade;
+	}
+
 	private void tickH(int j) {
 		long curr=System.currentTimeMillis();
 		
@@ -847,40 +1244,159 @@ public class PlanetJ implements IPlanet
 		}
 	}
 
+	/* colour, height and shade of the pixel (i,j) showing the point (x,y,z) */
+	void plot(int i, int j, double x, double y, double z, int depth)
+	{
+		double alt;
+		long s0 = splits+treeSteps;
+		if (floatTerrain!=null && depth<=FloatTerrain.MAX_DEPTH) {
+			alt = floatTerrain.planet1(x,y,z,depth);
+			shade = floatTerrain.shade;
+		}
+		else alt = planet1(x,y,z,depth);
+		if (gbuffer!=null) gbuffer.set(i, j, alt, normalNorth, normalEast);
+		if (layerData!=null) layerData.set(i, j, alt, y);
+		if (cost!=null) cost.set(i, j, (int)(splits+treeSteps-s0));
+		col.set(i, j, colorTable.color(alt, y));
+		heights.set(i, j, (int)alt);
+		if(!doWaterShade && alt<=0.0)
+		{
+			shades.set(i, j, waterShade);
+		}
+		else if(doshade)
+		{
+			shades.set(i, j, shade);
+		}
+	}
+
+	void back(int i, int j)
+	{
+		col.set(i, j, BACK);
+		heights.set(i, j, 0);
+		if (doshade) shades.set(i, j, 255);
+		if (gbuffer!=null) gbuffer.back(i, j);
+		if (layerData!=null) layerData.back(i, j);
+		if (cost!=null) cost.set(i, j, -1);
+	}
+
+	/* renders every pixel of the view, the grid is drawn afterwards */
+	void render()
+	{
+		Geometry g = Geometry.get(this);
+		double p[] = new double[3];
+		Checkpoint cp = checkpoint();
+		int first = Parallel.from(band, bands, Height);
+		int last = Parallel.from(band+1, bands, Height);
+
+		ymin = 2.0;
+		ymax = -2.0;
+		rowsDone = new BitSet(Height);
+		if (merge != null && !merge.equals("false")) {
+			Checkpoint.merge(this, parameters(), merge.split(","));
+			rowsDone.set(0, Height);
+			return;
+		}
+		if (cp != null) {
+			int resumed = cp.resume(this);
+			rowsDone.set(first, resumed);
+			first = resumed;
+		}
+
+		/* strips of rows, each walked tile by tile in the chosen order */
+		Traversal t = new Traversal(order);
+		int n = t.dx.length;
+		for (int j0 = first; j0 < last; j0 += t.size) {
+			if (stopped()) {
+				/* keep what is done for a later resume */
+				if (cp != null) cp.flush(this, j0);
+				return;
+			}
+			int j1 = Math.min(j0 + t.size, last);
+			long t0 = System.nanoTime(), s0 = splits+treeSteps;
+			for (int i0 = 0; i0 < Width; i0 += t.size) {
+				for (int k = 0; k < n; k++) {
+					int i = i0 + t.dx[k], j = j0 + t.dy[k];
+					if (i >= Width || j >= j1) continue;
+					if (g.point(i, j, p)) {
+						if (p[1] < ymin) ymin = p[1];
+						if (p[1] > ymax) ymax = p[1];
+						plot(i, j, p[0], p[1], p[2], g.depth(i, j));
+					}
+					else back(i, j);
+				}
+			}
+			profile.strip(j0, j1, System.nanoTime()-t0, splits+treeSteps-s0);
+			rowsDone.set(j0, j1);
+			for (int j = j0; j < j1; j++) {
+				if (cp != null) cp.row(this, j);
+				tickH(j);
+			}
+		}
+	}
+
+	/* Asks the render in progress to stop at the next strip of rows; */
+	/* rowsDone tells which rows it got to. Safe to call from any thread. */
+	/* The next process() starts uncancelled. */
+	public void cancel()
+	{
+		cancelled = true;
+	}
+
+	/* whether the render has to stop, an interrupt counts as cancel() */
+	boolean stopped()
+	{
+		if (Thread.currentThread().isInterrupted()) cancelled = true;
+		return cancelled || (deadline>0 && System.currentTimeMillis()>=deadline);
+	}
+
+	/* whether the last render got to every row of its band */
+	public boolean isComplete()
+	{
+		int first = Parallel.from(band, bands, Height);
+		int last = Parallel.from(band+1, bands, Height);
+		return rowsDone!=null && rowsDone.nextClearBit(first)>=last;
+	}
+
+	/* a band always goes to a part file, by default next to the image */
+	Checkpoint checkpoint()
+	{
+		String f = checkpoint;
+
+		if((f==null || f.equals("false")) && bands>1)
+		{
+			if(filename==null || filename.equals("false"))
+			{
+				throw new IllegalArgumentException("A band needs --checkpoint or -o for its part file");
+			}
+			f = filename+"."+band+".part";
+		}
+		if(f==null || f.equals("false"))
+		{
+			return null;
+		}
+		return new Checkpoint(new File(f), parameters(), 1000L*checkpointInterval,
+				Parallel.from(band, bands, Height), Parallel.from(band+1, bands, Height));
+	}
+
+	/* everything that changes what a pixel looks like */
+	String parameters()
+	{
+		return view+" "+Width+"x"+Height+" "+rseed+" "+baseLongitude+" "+baseLatitude+" "+scale
+			+" "+initialAltitude+" "+altitudeWeight+" "+distanceWeight+" "+nocols+" "+useAlternativeColors
+			+" "+latitudeColors+" "+lighter+" "+colorsname+" "+doshade+" "+shadeAngle+" "+doWaterShade+" "+waterShade
+			+" "+fastMath+" "+floatPrecision+" "+earlyTermination+" "+footprintDepth;
+	}
+
 	public void mercator()
 	{
-		double y,scale1,cos2,theta1;
+		double y,theta1;
 		int i,j,k;
 
 		y = Math.sin(baseLatitude);
 		y = (1.0+y)/(1.0-y);
 		y = 0.5*Math.log(y);
 		k = (int)(0.5*y*Width*scale/PI);
-		for (j = 0; j < Height; j++) 
-		{
-			y = PI*(2.0*(j-k)-Height)/Width/scale;
-			y = Math.exp(2.*y);
-			y = (y-1.)/(y+1.);
-			scale1 = scale*Width/Height/Math.sqrt(1.0-y*y)/PI;
-			cos2 = Math.sqrt(1.0-y*y);
-			Depth = 3*((int)(log_2(scale1*Height)))+3;
-			for (i = 0; i < Width ; i++) 
-			{
-				theta1 = baseLongitude-0.5*PI+PI*(2.0*i-Width)/Width/scale;
-				double alt = planet1(Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-				col[i][j] = alt2color(alt, Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2); 
-				heights[i][j] = (int) alt; 
-				if(!doWaterShade && alt<=0.0)
-				{
-					shades[i][j] = waterShade; 
-				}
-				else if(doshade)
-				{
-					shades[i][j] = shade; 
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -888,63 +1404,32 @@ public class PlanetJ implements IPlanet
 				y = (1.0+y)/(1.0-y);
 				y = 0.5*Math.log(y);
 				j = Height/2+(int)(0.5*y*Width*scale/PI)+k;
-				if (j>=0 && j<Height) for (i = 0; i < Width ; i++) col[i][j] = BLACK;
+				if (j>=0 && j<Height) for (i = 0; i < Width ; i++) grid(i,j);
 			}
 		}
 		if (vgrid != 0.0) { /* draw vertical gridlines */
 			for (theta1 = 0.0; theta1>-360.0; theta1-=vgrid);
 			for (theta1 = theta1; theta1<360.0; theta1+=vgrid) {
 				i = (int)(0.5*Width*(1.0+scale*(DEG2RAD*theta1-baseLongitude)/PI));
-				if (i>=0 && i<Width) for (j = 0; j < Height; j++) col[i][j] = BLACK;
+				if (i>=0 && i<Width) for (j = 0; j < Height; j++) grid(i,j);
 			} 
 		}
 	}
 
 	public void peter()
 	{
-		double y,cos2,theta1,scale1;
-		int k,i,j,water,land;
+		double y,theta1;
+		int k,i,j;
 
 		y = 2.0*Math.sin(baseLatitude);
 		k = (int)(0.5*y*Width*scale/PI);
-		water = land = 0;
-		for (j = 0; j < Height; j++) {
-			y = 0.5*PI*(2.0*(j-k)-Height)/Width/scale;
-			if (Math.abs(y)>1.0)
-				for (i = 0; i < Width ; i++) {
-					col[i][j] = BACK;
-					if (doshade) shades[i][j] = 255;
-				}
-			else {
-				cos2 = Math.sqrt(1.0-y*y);
-				if (cos2>0.0) {
-					scale1 = scale*Width/Height/cos2/PI;
-					Depth = 3*((int)(log_2(scale1*Height)))+3;
-					for (i = 0; i < Width ; i++) {
-						theta1 = baseLongitude-0.5*PI+PI*(2.0*i-Width)/Width/scale;
-						double alt = planet1(Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-						col[i][j] = alt2color(alt, Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-						heights[i][j] = (int) alt; 
-						if(!doWaterShade && alt<=0.0)
-						{
-							shades[i][j] = waterShade; 
-						}
-						else if(doshade)
-						{
-							shades[i][j] = shade; 
-						}
-						if (col[i][j] < LAND0) water++; else land++;
-					}
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
 				y = 2.0*Math.sin(DEG2RAD*theta1);
 				j = Height/2+(int)(0.5*y*Width*scale/PI)+k;
-				if (j>=0 && j<Height) for (i = 0; i < Width ; i++) col[i][j] = BLACK;
+				if (j>=0 && j<Height) for (i = 0; i < Width ; i++) grid(i,j);
 			}
 		}
 		if (vgrid != 0.0) { /* draw vertical gridlines */
@@ -954,52 +1439,17 @@ public class PlanetJ implements IPlanet
 				if (i>=0 && i<Width)
 					for (j = max(0,Height/2-(int)(Width*scale/PI)+k);
 					j < min(Height,Height/2+(int)(Width*scale/PI)+k); j++)
-						col[i][j] = BLACK;
+						grid(i,j);
 			}
 		}
 	}
 	
 	public void mollweide()
 	{
-		double x,y,y1,zz,scale1,cos2,theta1,theta2;
+		double x,y,y1,theta1,theta2;
 		int i,j,i1=1,k;
 
-		for (j = 0; j < Height; j++) {
-			y1 = 2*(2.0*j-Height)/Width/scale;
-			if (Math.abs(y1)>=1.0) for (i = 0; i < Width ; i++) {
-				col[i][j] = BACK;
-				if (doshade) shades[i][j] = 255;
-			} else {
-				zz = Math.sqrt(1.0-y1*y1);
-				y = 2.0/PI*(y1*zz+Math.asin(y1));
-				cos2 = Math.sqrt(1.0-y*y);
-				if (cos2>0.0) {
-					scale1 = scale*Width/Height/cos2/PI;
-					Depth = 3*((int)(log_2(scale1*Height)))+3;
-					for (i = 0; i < Width ; i++) {
-						theta1 = PI/zz*(2.0*i-Width)/Width/scale;
-						if (Math.abs(theta1)>PI) {
-							col[i][j] = BACK;
-							if (doshade) shades[i][j] = 255;
-						} else {
-							theta1 += baseLongitude-0.5*PI;
-							double alt = planet1(Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-							col[i][j] = alt2color(alt, Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-							heights[i][j] = (int)alt;
-							if(!doWaterShade && alt<=0.0)
-							{
-								shades[i][j] = waterShade; 
-							}
-							else if(doshade)
-							{
-								shades[i][j] = shade; 
-							}
-						}
-					}
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1011,7 +1461,7 @@ public class PlanetJ implements IPlanet
 				if (j>=0 && j< Height) {
 					for (i = max(0,Width/2-(int)(0.5*Width*scale*Math.sqrt(1.0-y*y)));
 					i < min(Width,Width/2+(int)(0.5*Width*scale*Math.sqrt(1.0-y*y))); i++)
-						col[i][j] = BLACK;
+						grid(i,j);
 				}
 			}
 		}
@@ -1028,16 +1478,16 @@ public class PlanetJ implements IPlanet
 						y1 = 2*(2.0*j-Height)/Width/scale;
 						if (Math.abs(y1)<=1.0) {
 							i1 = (int) (Width/2+x*Math.sqrt(1.0-y1*y1));
-							if (i1>=0 && i1<Width) col[i1][j] = BLACK;
+							if (i1>=0 && i1<Width) grid(i1,j);
 						}
 						if (Math.abs(y)<=1.0) {
 							if (i<i1) {
 								for (k=i+1; k<i1; k++)
-									if (k>00 && k<Width) col[k][j] = BLACK;
+									if (k>00 && k<Width) grid(k,j);
 							}
 							else if (i>i1) {
 								for (k=i-1; k>i1; k--)
-									if (k>=0 && k<Width) col[k][j] = BLACK;
+									if (k>=0 && k<Width) grid(k,j);
 							}
 						}
 						y = y1;
@@ -1050,52 +1500,11 @@ public class PlanetJ implements IPlanet
 	
 	public void sinusoid()
 	{
-		double y,theta1,theta2,cos2,l1,i1,scale1;
+		double y,theta1,theta2,cos2,l1,i1;
 		int k,i,j,l,c;
 
 		k = (int)(baseLatitude*Width*scale/PI);
-		for (j = 0; j < Height; j++) {
-			y = (2.0*(j-k)-Height)/Width/scale*PI;
-			if (Math.abs(y)>=0.5*PI) for (i = 0; i < Width ; i++) {
-				col[i][j] = BACK;
-				if (doshade) shades[i][j] = 255;
-			} else {
-				cos2 = Math.cos(y);
-				if (cos2>0.0) {
-					scale1 = scale*Width/Height/cos2/PI;
-					Depth = 3*((int)(log_2(scale1*Height)))+3;
-					for (i = 0; i<Width; i++) {
-						l = i*12/Width;
-						l1 = l*Width/12.0;
-						i1 = i-l1;
-						theta2 = baseLongitude-0.5*PI+PI*(2.0*l1-Width)/Width/scale;
-						theta1 = (PI*(2.0*i1-Width/12)/Width/scale)/cos2;
-						if (Math.abs(theta1)>PI/12.0) 
-						{
-							col[i][j] = BACK;
-							if (doshade) shades[i][j] = 255;
-						} 
-						else 
-						{
-							double alt = planet1(Math.cos(theta1+theta2)*cos2,Math.sin(y),
-									-Math.sin(theta1+theta2)*cos2);
-							col[i][j] = alt2color(alt, Math.cos(theta1+theta2)*cos2,Math.sin(y),
-									-Math.sin(theta1+theta2)*cos2);
-							heights[i][j] = (int)alt;
-							if(!doWaterShade && alt<=0.0)
-							{
-								shades[i][j] = waterShade; 
-							}
-							else if(doshade)
-							{
-								shades[i][j] = shade; 
-							}
-						}
-					}
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (; theta1<90.0; theta1+=hgrid) {
@@ -1108,7 +1517,7 @@ public class PlanetJ implements IPlanet
 						l1 = l*Width/12.0;
 						i1 = i-l1;
 						theta2 = (PI*(2.0*i1-Width/12)/Width/scale)/cos2;
-						if (Math.abs(theta2)<=PI/12.0) col[i][j] = BLACK;
+						if (Math.abs(theta2)<=PI/12.0) grid(i,j);
 					}
 			}
 		}
@@ -1125,7 +1534,7 @@ public class PlanetJ implements IPlanet
 						l1 = l*Width/12.0+Width/24.0;
 						i1 = i-l1;
 						c = (int) (l1+i1*cos2);
-						if (c>=0 && c<Width) col[c][j] = BLACK;
+						if (c>=0 && c<Width) grid(c,j);
 					}
 			}
 		}
@@ -1133,39 +1542,10 @@ public class PlanetJ implements IPlanet
 	
 	public void stereo()
 	{
-		double x,y,ymin,ymax,z,zz,x1,y1,z1,theta1,theta2;
+		double x,y,z,zz,x1,y1,z1,theta1,theta2;
 		int i,j;
 
-		ymin = 2.0;
-		ymax = -2.0;
-		for (j = 0; j < Height; j++) {
-			for (i = 0; i < Width ; i++) {
-				x = (2.0*i-Width)/Height/scale;
-				y = (2.0*j-Height)/Height/scale;
-				z = x*x+y*y;
-				zz = 0.25*(4.0+z);
-				x = x/zz;
-				y = y/zz;
-				z = (1.0-0.25*z)/zz;
-				x1 = clo*x+slo*sla*y+slo*cla*z;
-				y1 = cla*y-sla*z;
-				z1 = -slo*x+clo*sla*y+clo*cla*z;
-				if (y1 < ymin) ymin = y1;
-				if (y1 > ymax) ymax = y1;
-				double alt = planet1(x1,y1,z1);
-				col[i][j] = alt2color(alt, x1,y1,z1);
-				heights[i][j] = (int)alt;
-				if(!doWaterShade && alt<=0.0)
-				{
-					shades[i][j] = waterShade; 
-				}
-				else if(doshade)
-				{
-					shades[i][j] = shade; 
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1181,7 +1561,7 @@ public class PlanetJ implements IPlanet
 						if (Math.abs(z1)<1.0){
 							i = (int) (0.5*(Height*scale*2.0*x1*(1+z1)/(1.0-z1*z1)+Width));
 							j = (int) (0.5*(Height*scale*2.0*y1*(1+z1)/(1.0-z1*z1)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1200,7 +1580,7 @@ public class PlanetJ implements IPlanet
 						if (Math.abs(z1)<1.0){
 							i = (int) (0.5*(Height*scale*2.0*x1*(1+z1)/(1-z1*z1)+Width));
 							j = (int) (0.5*(Height*scale*2.0*y1*(1+z1)/(1-z1*z1)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1210,42 +1590,10 @@ public class PlanetJ implements IPlanet
 
 	public void orthographic()
 	{
-		double x,y,z,x1,y1,z1,ymin,ymax,theta1,theta2,zz;
+		double x,y,z,x1,y1,z1,theta1,theta2,zz;
 		int i,j;
 
-		ymin = 2.0;
-		ymax = -2.0;
-		for (j = 0; j < Height; j++) {
-			for (i = 0; i < Width ; i++) {
-				x = (2.0*i-Width)/Height/scale;
-				y = (2.0*j-Height)/Height/scale;
-				if (x*x+y*y>1.0) 
-				{
-					heights[i][j]=0;
-					col[i][j] = BACK;
-					if (doshade) shades[i][j] = 255;
-				} else {
-					z = Math.sqrt(1.0-x*x-y*y);
-					x1 = clo*x+slo*sla*y+slo*cla*z;
-					y1 = cla*y-sla*z;
-					z1 = -slo*x+clo*sla*y+clo*cla*z;
-					if (y1 < ymin) ymin = y1;
-					if (y1 > ymax) ymax = y1;
-					double alt = planet1(x1,y1,z1);
-					col[i][j] = alt2color(alt, x1,y1,z1);
-					heights[i][j] = (int)alt;
-					if(!doWaterShade && alt<=0.0)
-					{
-						shades[i][j] = waterShade; 
-					}
-					else if(doshade)
-					{
-						shades[i][j] = shade; 
-					}
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1261,7 +1609,7 @@ public class PlanetJ implements IPlanet
 						if (0.0>=z1){
 							i = (int) (0.5*(Height*scale*x1+Width));
 							j = (int) (0.5*(Height*scale*y1+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1280,7 +1628,7 @@ public class PlanetJ implements IPlanet
 						if (0.0>=z1){
 							i = (int) (0.5*(Height*scale*x1+Width));
 							j = (int) (0.5*(Height*scale*y1+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1290,38 +1638,10 @@ public class PlanetJ implements IPlanet
 
 	public void gnomonic()
 	{
-		double x,y,z,x1,y1,z1,zz,theta1,theta2,ymin,ymax;
+		double x,y,z,x1,y1,z1,zz,theta1,theta2;
 		int i,j;
 
-		ymin = 2.0;
-		ymax = -2.0;
-		for (j = 0; j < Height; j++) {
-			for (i = 0; i < Width ; i++) {
-				x = (2.0*i-Width)/Height/scale;
-				y = (2.0*j-Height)/Height/scale;
-				zz = Math.sqrt(1.0/(1.0+x*x+y*y));
-				x = x*zz;
-				y = y*zz;
-				z = Math.sqrt(1.0-x*x-y*y);
-				x1 = clo*x+slo*sla*y+slo*cla*z;
-				y1 = cla*y-sla*z;
-				z1 = -slo*x+clo*sla*y+clo*cla*z;
-				if (y1 < ymin) ymin = y1;
-				if (y1 > ymax) ymax = y1;
-				double alt = planet1(x1,y1,z1);
-				col[i][j] = alt2color(alt, x1,y1,z1);
-				heights[i][j] = (int)alt;
-				if(!doWaterShade && alt<=0.0)
-				{
-					shades[i][j] = waterShade; 
-				}
-				else if(doshade)
-				{
-					shades[i][j] = shade; 
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1337,7 +1657,7 @@ public class PlanetJ implements IPlanet
 						if (z1!=0.0){
 							i = (int) (0.5*(Height*scale*x1/z1+Width));
 							j = (int) (0.5*(Height*scale*y1/z1+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1356,7 +1676,7 @@ public class PlanetJ implements IPlanet
 						if (z1!=0.0){
 							i = (int) (0.5*(Height*scale*x1/z1+Width));
 							j = (int) (0.5*(Height*scale*y1/z1+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1366,44 +1686,10 @@ public class PlanetJ implements IPlanet
 	
 	public void azimuth()
 	{
-		double x,y,z,x1,y1,z1,zz,theta1,theta2,ymin,ymax;
+		double x,y,z,x1,y1,z1,zz,theta1,theta2;
 		int i,j;
 
-		ymin = 2.0;
-		ymax = -2.0;
-		for (j = 0; j < Height; j++) {
-			for (i = 0; i < Width ; i++) {
-				x = (2.0*i-Width)/Height/scale;
-				y = (2.0*j-Height)/Height/scale;
-				zz = x*x+y*y;
-				z = 1.0-0.5*zz;
-				if (z<-1.0) {
-					col[i][j] = BACK;
-					if (doshade) shades[i][j] = 255;
-				} else {
-					zz = Math.sqrt(1.0-0.25*zz);
-					x = x*zz;
-					y = y*zz;
-					x1 = clo*x+slo*sla*y+slo*cla*z;
-					y1 = cla*y-sla*z;
-					z1 = -slo*x+clo*sla*y+clo*cla*z;
-					if (y1 < ymin) ymin = y1;
-					if (y1 > ymax) ymax = y1;
-					double alt = planet1(x1,y1,z1);
-					col[i][j] = alt2color(alt, x1,y1,z1);
-					heights[i][j] = (int)alt;
-					if(!doWaterShade && alt<=0.0)
-					{
-						shades[i][j] = waterShade;
-					}
-					else if(doshade) 
-					{
-						shades[i][j] = shade;
-					}
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1419,7 +1705,7 @@ public class PlanetJ implements IPlanet
 						if (z1!=-1.0){
 							i = (int) (0.5*(Height*scale*x1/Math.sqrt(0.5+0.5*z1)+Width));
 							j = (int) (0.5*(Height*scale*y1/Math.sqrt(0.5+0.5*z1)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1438,7 +1724,7 @@ public class PlanetJ implements IPlanet
 						if (z1!=-1.0){
 							i = (int) (0.5*(Height*scale*x1/Math.sqrt(0.5+0.5*z1)+Width));
 							j = (int) (0.5*(Height*scale*y1/Math.sqrt(0.5+0.5*z1)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1448,52 +1734,14 @@ public class PlanetJ implements IPlanet
 	
 	public void conical()
 	{
-		double k1,c,y2,x,y,zz,x1,y1,z1,theta1,theta2,ymin,ymax,cos2;
+		double k1,c,y2,y,zz,x1,y1,z1,theta1,theta2;
 		int i,j;
 
-		ymin = 2.0;
-		ymax = -2.0;
+		render();
 		if (baseLatitude>0) {
 			k1 = 1.0/Math.sin(baseLatitude);
 			c = k1*k1;
 			y2 = Math.sqrt(c*(1.0-Math.sin(baseLatitude/k1))/(1.0+Math.sin(baseLatitude/k1)));
-			for (j = 0; j < Height; j++) {
-				for (i = 0; i < Width ; i++) {
-					x = (2.0*i-Width)/Height/scale;
-					y = (2.0*j-Height)/Height/scale+y2;
-					zz = x*x+y*y;
-					if (zz==0.0) theta1 = 0.0; else theta1 = k1*Math.atan2(x,y);
-					if (theta1<-PI || theta1>PI) {
-						col[i][j] = BACK;
-						if (doshade) shades[i][j] = 255;
-					} else {
-						theta1 += baseLongitude-0.5*PI; /* theta1 is longitude */
-						theta2 = k1*Math.asin((zz-c)/(zz+c));
-						/* theta2 is latitude */
-						if (theta2 > 0.5*PI || theta2 < -0.5*PI) {
-							col[i][j] = BACK;
-							if (doshade) shades[i][j] = 255;
-						} else {
-							cos2 = Math.cos(theta2);
-							y = Math.sin(theta2);
-							if (y < ymin) ymin = y;
-							if (y > ymax) ymax = y;
-							double alt = planet1(Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-							col[i][j] = alt2color(alt, Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-							heights[i][j] = (int)alt;
-							if(!doWaterShade && alt<=0.0)
-							{
-								shades[i][j] = waterShade; 
-							}
-							else if(doshade)
-							{
-								shades[i][j] = shade; 
-							}
-						}
-					}
-				}
-				tickH(j);
-			}
 			if (hgrid != 0.0) { /* draw horisontal gridlines */
 				for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 				for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1507,7 +1755,7 @@ public class PlanetJ implements IPlanet
 							y1 = zz*Math.cos(z1/k1);
 							i = (int) (0.5*(Height*scale*x1+Width));
 							j = (int) (0.5*(Height*scale*(y1-y2)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1525,7 +1773,7 @@ public class PlanetJ implements IPlanet
 							y1 = zz*Math.cos(z1/k1);
 							i = (int) (0.5*(Height*scale*x1+Width));
 							j = (int) (0.5*(Height*scale*(y1-y2)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1535,36 +1783,6 @@ public class PlanetJ implements IPlanet
 			k1 = 1.0/Math.sin(baseLatitude);
 			c = k1*k1;
 			y2 = Math.sqrt(c*(1.0-Math.sin(baseLatitude/k1))/(1.0+Math.sin(baseLatitude/k1)));
-			for (j = 0; j < Height; j++) {
-				for (i = 0; i < Width ; i++) {
-					x = (2.0*i-Width)/Height/scale;
-					y = (2.0*j-Height)/Height/scale-y2;
-					zz = x*x+y*y;
-					if (zz==0.0) theta1 = 0.0; else theta1 = -k1*Math.atan2(x,-y);
-					if (theta1<-PI || theta1>PI) {
-						col[i][j] = BACK;
-						if (doshade) shades[i][j] = 255;
-					} else {
-						theta1 += baseLongitude-0.5*PI; /* theta1 is longitude */
-						theta2 = k1*Math.asin((zz-c)/(zz+c));
-						/* theta2 is latitude */
-						if (theta2 > 0.5*PI || theta2 < -0.5*PI) {
-							col[i][j] = BACK;
-							if (doshade) shades[i][j] = 255;
-						} else {
-							cos2 = Math.cos(theta2);
-							y = Math.sin(theta2);
-							if (y < ymin) ymin = y;
-							if (y > ymax) ymax = y;
-							double alt = planet1(Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-							col[i][j] = alt2color(alt, Math.cos(theta1)*cos2,y,-Math.sin(theta1)*cos2);
-							heights[i][j] = (int)alt;
-							if (doshade) shades[i][j] = shade;
-						}
-					}
-				}
-				tickH(j);
-			}
 			if (hgrid != 0.0) { /* draw horisontal gridlines */
 				for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 				for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
@@ -1578,7 +1796,7 @@ public class PlanetJ implements IPlanet
 							y1 = -zz*Math.cos(z1/k1);
 							i = (int) (0.5*(Height*scale*x1+Width));
 							j = (int) (0.5*(Height*scale*(y1+y2)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1596,7 +1814,7 @@ public class PlanetJ implements IPlanet
 							y1 = -zz*Math.cos(z1/k1);
 							i = (int) (0.5*(Height*scale*x1+Width));
 							j = (int) (0.5*(Height*scale*(y1+y2)+Height));
-							if (0<=i && i<Width && 0<=j && j<Height) col[i][j] = BLACK;
+							if (0<=i && i<Width && 0<=j && j<Height) grid(i,j);
 						}
 					}
 				}
@@ -1606,44 +1824,17 @@ public class PlanetJ implements IPlanet
 
 	public void squarep()
 	{
-		double y,scale1,theta1,cos2;
+		double y,theta1;
 		int k,i,j;
 
 		k = (int)(baseLatitude*Width*scale/PI);
-		for (j = 0; j < Height; j++) {
-			y = (2.0*(j-k)-Height)/Width/scale*PI;
-			if (Math.abs(y)>=0.5*PI) for (i = 0; i < Width ; i++) {
-				col[i][j] = BACK;
-				if (doshade) shades[i][j] = 255;
-			} else {
-				cos2 = Math.cos(y);
-				if (cos2>0.0) {
-					scale1 = scale*Width/Height/cos2/PI;
-					Depth = 3*((int)(log_2(scale1*Height)))+3;
-					for (i = 0; i < Width ; i++) {
-						theta1 = baseLongitude-0.5*PI+PI*(2.0*i-Width)/Width/scale;
-						double alt = planet1(Math.cos(theta1)*cos2,Math.sin(y),-Math.sin(theta1)*cos2);
-						col[i][j] = alt2color(alt, Math.cos(theta1)*cos2,Math.sin(y),-Math.sin(theta1)*cos2);
-						heights[i][j] = (int)alt;
-						if(!doWaterShade && alt<=0.0)
-						{
-							shades[i][j] = waterShade; 
-						}
-						else if(doshade)
-						{
-							shades[i][j] = shade; 
-						}
-					}
-				}
-			}
-			tickH(j);
-		}
+		render();
 		if (hgrid != 0.0) { /* draw horisontal gridlines */
 			for (theta1 = 0.0; theta1>-90.0; theta1-=hgrid);
 			for (theta1 = theta1; theta1<90.0; theta1+=hgrid) {
 				y = DEG2RAD*theta1;
 				j = Height/2+(int)(0.5*y*Width*scale/PI)+k;
-				if (j>=0 && j<Height) for (i = 0; i < Width ; i++) col[i][j] = BLACK;
+				if (j>=0 && j<Height) for (i = 0; i < Width ; i++) grid(i,j);
 			}
 		}
 		if (vgrid != 0.0) { /* draw vertical gridlines */
@@ -1653,13 +1844,20 @@ public class PlanetJ implements IPlanet
 				if (i>=0 && i<Width)
 					for (j = max(0,Height/2-(int)(0.25*PI*Width*scale/PI)+k);
 					j < min(Height,Height/2+(int)(0.25*PI*Width*scale/PI)+k); j++)
-						col[i][j] = BLACK;
+						grid(i,j);
 			}
 		}
 	}
 
 	public void save() 
 	{
+		long t0 = System.nanoTime();
+
+		if(bands>1)
+		{
+			/* the part file written while rendering is all a band produces */
+			return;
+		}
 		if(filename!=null && !filename.equals("false"))
 		{
 			save(filename);
@@ -1672,6 +1870,40 @@ public class PlanetJ implements IPlanet
 		{
 			saveTERRAGEN(ter_file);
 		}
+		if(normalMap!=null && !normalMap.equals("false"))
+		{
+			gbuffer.saveNormals(normalMap);
+		}
+		if(pyramid!=null && !pyramid.equals("false"))
+		{
+			Pyramid.write(this, pyramid, tileSize);
+		}
+		if(layers!=null && !layers.equals("false"))
+		{
+			layerData.save(layers);
+		}
+		if(contours!=null && !contours.equals("false"))
+		{
+			Contours.write(this, contours, contourLevels, contourTolerance);
+		}
+		if(tiles!=null && !tiles.equals("false"))
+		{
+			TileFile.write(this, tiles, tileSize);
+		}
+		if(costMap!=null && !costMap.equals("false"))
+		{
+			Profile.costMap(this, costMap);
+		}
+		if(checkpoint!=null && !checkpoint.equals("false") && isComplete())
+		{
+			/* a map that was stopped short can still be resumed */
+			new File(checkpoint).delete();
+		}
+		profile.phase("save", System.nanoTime()-t0);
+		if(debug)
+		{
+			profile.report(this, System.err);
+		}
 	}
 
 	public double getScale() {
@@ -1825,5 +2057,245 @@ public class PlanetJ implements IPlanet
 	public void setShadeAngle(double shadeAngle) {
 		this.shadeAngle = shadeAngle;
 	}
+
+	public boolean isFastMath() {
+		return fastMath;
+	}
+
+	public void setFastMath(boolean fastMath) {
+		this.fastMath = fastMath;
+	}
+
+	public boolean isFloatPrecision() {
+		return floatPrecision;
+	}
+
+	public void setFloatPrecision(boolean floatPrecision) {
+		this.floatPrecision = floatPrecision;
+	}
+
+	public boolean isEarlyTermination() {
+		return earlyTermination;
+	}
+
+	public void setEarlyTermination(boolean earlyTermination) {
+		this.earlyTermination = earlyTermination;
+	}
+
+	public int getEdgeWidth() {
+		return edgeWidth;
+	}
+
+	public void setEdgeWidth(int edgeWidth) {
+		this.edgeWidth = edgeWidth;
+	}
+
+	public int getEdgeColor() {
+		return edgeColor;
+	}
+
+	public void setEdgeColor(int edgeColor) {
+		this.edgeColor = edgeColor;
+	}
+
+	public int getThreads() {
+		return threads;
+	}
+
+	public void setThreads(int threads) {
+		this.threads = threads;
+	}
+
+	public String getRasterDir() {
+		return rasterDir;
+	}
+
+	public void setRasterDir(String rasterDir) {
+		this.rasterDir = rasterDir;
+	}
+
+	public String getCheckpoint() {
+		return checkpoint;
+	}
+
+	public void setCheckpoint(String checkpoint) {
+		this.checkpoint = checkpoint;
+	}
+
+	public int getCheckpointInterval() {
+		return checkpointInterval;
+	}
+
+	public void setCheckpointInterval(int checkpointInterval) {
+		this.checkpointInterval = checkpointInterval;
+	}
+
+	public int getBand() {
+		return band;
+	}
+
+	public void setBand(int band) {
+		this.band = band;
+	}
+
+	public int getBands() {
+		return bands;
+	}
+
+	public void setBands(int bands) {
+		this.bands = bands;
+	}
+
+	public String getMerge() {
+		return merge;
+	}
+
+	public void setMerge(String merge) {
+		this.merge = merge;
+	}
+
+	public int getTreeCache() {
+		return treeCache;
+	}
+
+	public void setTreeCache(int treeCache) {
+		this.treeCache = treeCache;
+	}
+
+	public String getOrder() {
+		return order;
+	}
+
+	public void setOrder(String order) {
+		this.order = order;
+	}
+
+	public boolean isDeferred() {
+		return deferred;
+	}
+
+	public void setDeferred(boolean deferred) {
+		this.deferred = deferred;
+	}
+
+	public String getNormalMap() {
+		return normalMap;
+	}
+
+	public void setNormalMap(String normalMap) {
+		this.normalMap = normalMap;
+	}
+
+	public String getPyramid() {
+		return pyramid;
+	}
+
+	public void setPyramid(String pyramid) {
+		this.pyramid = pyramid;
+	}
+
+	public int getTileSize() {
+		return tileSize;
+	}
+
+	public void setTileSize(int tileSize) {
+		this.tileSize = tileSize;
+	}
+
+	public String getCostMap() {
+		return costMap;
+	}
+
+	public void setCostMap(String costMap) {
+		this.costMap = costMap;
+	}
+
+	public long getTimeLimit() {
+		return timeLimit;
+	}
+
+	public void setTimeLimit(long timeLimit) {
+		this.timeLimit = timeLimit;
+	}
+
+	public long getDeadline() {
+		return deadline;
+	}
+
+	public void setDeadline(long deadline) {
+		this.deadline = deadline;
+	}
+
+	public String getLayers() {
+		return layers;
+	}
+
+	public void setLayers(String layers) {
+		this.layers = layers;
+	}
+
+	public String getContours() {
+		return contours;
+	}
+
+	public void setContours(String contours) {
+		this.contours = contours;
+	}
+
+	public double[] getContourLevels() {
+		return contourLevels;
+	}
+
+	public void setContourLevels(double[] contourLevels) {
+		this.contourLevels = contourLevels;
+	}
+
+	public double getContourTolerance() {
+		return contourTolerance;
+	}
+
+	public void setContourTolerance(double contourTolerance) {
+		this.contourTolerance = contourTolerance;
+	}
+
+	public String getTiles() {
+		return tiles;
+	}
+
+	public void setTiles(String tiles) {
+		this.tiles = tiles;
+	}
+
+	public String getAdmission() {
+		return admission;
+	}
+
+	public void setAdmission(String admission) {
+		this.admission = admission;
+	}
+
+	public int getMemoryLimit() {
+		return memoryLimit;
+	}
+
+	public void setMemoryLimit(int memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public int getPngLevel() {
+		return pngLevel;
+	}
+
+	public void setPngLevel(int pngLevel) {
+		this.pngLevel = pngLevel;
+	}
+
+	public boolean isFootprintDepth() {
+		return footprintDepth;
+	}
+
+	public void setFootprintDepth(boolean footprintDepth) {
+		this.footprintDepth = footprintDepth;
+	}
 		
 }
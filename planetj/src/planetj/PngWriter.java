@@ -0,0 +1,308 @@
+package planetj;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Method;
+import java.util.zip.Adler32;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/* Writes the map as an RGB PNG a strip of rows at a time, so only the */
+/* strip has to be in memory. */
+
+/* The rasters are stored by column, so rows are read as one short run */
+/* per column. Rows are Sub filtered and cut into pieces of about PIECE */
+/* pixels, which all threads deflate at once, the way pigz does: each */
+/* piece has a deflater of its own, primed with the 32 KB of filtered */
+/* rows before it as its dictionary, and ends on a sync flush, so the */
+/* pieces join up into one zlib stream whose Adler-32 is combined from */
+/* theirs. They are written in order as 64 KB IDAT chunks. A strip holds */
+/* about STRIP pixels' worth of pieces. --png-level sets the compression */
+/* level, 0 to 9, -1 for the default. */
+
+/* The sync flush needs Java 7; on Java 6 the pieces go through a single */
+/* deflater one after another. */
+
+public class PngWriter
+{
+	static final int STRIP = 1<<22; /* pixels read per strip */
+	static final int PIECE = 1<<18; /* pixels deflated per piece */
+	static final int CHUNK = 1<<16;
+	static final int WINDOW = 1<<15; /* deflate's dictionary */
+	static final byte SIGNATURE[] = { (byte)137, 80, 78, 71, 13, 10, 26, 10 };
+
+	static final int SYNC_FLUSH = 2; /* Deflater.SYNC_FLUSH */
+	static Method flush; /* Deflater.deflate(byte[], int, int, int), null before Java 7 */
+
+	static
+	{
+		try
+		{
+			flush = Deflater.class.getMethod("deflate", byte[].class, int.class, int.class, int.class);
+		}
+		catch (NoSuchMethodException e)
+		{
+			flush = null;
+		}
+	}
+
+	/* a piece of filtered rows and what it deflated to */
+	static class Piece
+	{
+		int from, to; /* rows */
+		byte data[];
+		int length;
+		long adler;
+		int raw; /* filtered bytes */
+	}
+
+	public static void write(final PlanetJ p, File f)
+	{
+		final int w = p.Width, h = p.Height;
+		final int level = p.pngLevel;
+		int rows = PlanetJ.max(1, PlanetJ.min(h, PIECE/PlanetJ.max(1, w)));
+		int pieces = (h+rows-1)/rows;
+		int batch = PlanetJ.max(Parallel.threads(p.threads), STRIP/PlanetJ.max(1, w*rows));
+		final boolean parallel = (flush!=null);
+
+		try
+		{
+			DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(f), CHUNK));
+			try
+			{
+				out.write(SIGNATURE);
+
+				ChunkStream ihdr = new ChunkStream(out, "IHDR");
+				DataOutputStream hdr = new DataOutputStream(ihdr);
+				hdr.writeInt(w);
+				hdr.writeInt(h);
+				hdr.writeByte(8); /* bits per sample */
+				hdr.writeByte(2); /* RGB */
+				hdr.writeByte(0); /* deflate */
+				hdr.writeByte(0); /* adaptive filtering */
+				hdr.writeByte(0); /* not interlaced */
+				hdr.flush();
+				ihdr.close();
+
+				ChunkStream idat = new ChunkStream(out, "IDAT");
+				idat.write(0x78); /* deflate, 32 KB window */
+				idat.write(level<0 ? 0x9c : level<2 ? 0x01 : level<6 ? 0x5e : level==6 ? 0x9c : 0xda);
+
+				final Deflater shared = (parallel ? null : new Deflater(level, true));
+				long adler = 1;
+				for (int k0=0; k0<pieces; k0+=batch)
+				{
+					final Piece strip[] = new Piece[PlanetJ.min(batch, pieces-k0)];
+					for (int k=0; k<strip.length; k++)
+					{
+						strip[k] = new Piece();
+						strip[k].from = (k0+k)*rows;
+						strip[k].to = PlanetJ.min(h, strip[k].from+rows);
+					}
+
+					Parallel.run(parallel ? p.threads : 1, strip.length, new IBand()
+					{
+						public void run(int band, int from, int to)
+						{
+							for (int k=from; k<to; k++)
+							{
+								Piece piece = strip[k];
+								Deflater d = (shared!=null ? shared : new Deflater(level, true));
+								try
+								{
+									deflate(p, piece, d, parallel, piece.to==h);
+								}
+								finally
+								{
+									if (d!=shared) d.end();
+								}
+							}
+						}
+					});
+
+					for (int k=0; k<strip.length; k++)
+					{
+						idat.write(strip[k].data, 0, strip[k].length);
+						adler = combine(adler, strip[k].adler, strip[k].raw);
+					}
+				}
+				if (shared!=null) shared.end();
+
+				idat.write((int)(adler>>24));
+				idat.write((int)(adler>>16));
+				idat.write((int)(adler>>8));
+				idat.write((int)adler);
+				idat.close();
+
+				new ChunkStream(out, "IEND").close();
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot write image file: "+f, e);
+		}
+	}
+
+	/* filters the rows of the piece and deflates them, with the rows that */
+	/* fill the window before it as the dictionary if primed */
+	static void deflate(PlanetJ p, Piece piece, Deflater d, boolean primed, boolean last)
+	{
+		int w = p.Width, line = 1+3*w;
+		int before = (primed ? PlanetJ.min(piece.from, (WINDOW+line-1)/line) : 0);
+		byte b[] = filter(p, piece.from-before, piece.to);
+
+		int start = before*line;
+		piece.raw = b.length-start;
+		Adler32 a = new Adler32();
+		a.update(b, start, piece.raw);
+		piece.adler = a.getValue();
+
+		if (before>0)
+		{
+			int n = PlanetJ.min(start, WINDOW);
+			d.setDictionary(b, start-n, n);
+		}
+		d.setInput(b, start, piece.raw);
+		if (last) d.finish();
+
+		byte z[] = new byte[piece.raw/4+CHUNK];
+		int n = 0;
+		while (true)
+		{
+			if (n==z.length)
+			{
+				byte grown[] = new byte[2*z.length];
+				System.arraycopy(z, 0, grown, 0, n);
+				z = grown;
+			}
+			int space = z.length-n;
+			int k;
+			if (last || !primed) k = d.deflate(z, n, space);
+			else k = sync(d, z, n, space);
+			n += k;
+
+			if (last ? d.finished() : (primed ? k<space : d.needsInput())) break;
+		}
+		piece.data = z;
+		piece.length = n;
+	}
+
+	/* Deflater.deflate(z, off, len, SYNC_FLUSH) */
+	static int sync(Deflater d, byte z[], int off, int len)
+	{
+		try
+		{
+			return ((Integer)flush.invoke(d, z, off, len, SYNC_FLUSH)).intValue();
+		}
+		catch (Exception e)
+		{
+			throw new IllegalStateException("Cannot flush deflater", e);
+		}
+	}
+
+	/* rows from to to, Sub filtered */
+	static byte[] filter(PlanetJ p, int from, int to)
+	{
+		int w = p.Width, n = to-from, line = 1+3*w;
+		int c[] = new int[w*n], s[] = new int[w*n];
+		for (int i=0; i<w; i++)
+		{
+			p.col.read(i, from, c, i*n, n);
+			p.shades.read(i, from, s, i*n, n);
+		}
+
+		byte b[] = new byte[line*n];
+		for (int l=0; l<n; l++)
+		{
+			int k = l*line;
+			b[k++] = 1; /* Sub */
+			int left = 0;
+			for (int i=0; i<w; i++, k+=3)
+			{
+				int rgb = p.rgb(c[i*n+l], s[i*n+l]);
+				b[k] = (byte)((rgb>>16)-(left>>16));
+				b[k+1] = (byte)((rgb>>8)-(left>>8));
+				b[k+2] = (byte)(rgb-left);
+				left = rgb;
+			}
+		}
+		return b;
+	}
+
+	/* the Adler-32 of two runs of bytes from theirs and the length of the */
+	/* second, as zlib's adler32_combine() */
+	static long combine(long a1, long a2, long len2)
+	{
+		final long BASE = 65521;
+		long rem = len2%BASE;
+		long sum1 = a1&0xffff;
+		long sum2 = (rem*sum1)%BASE;
+		sum1 += (a2&0xffff)+BASE-1;
+		sum2 += ((a1>>16)&0xffff)+((a2>>16)&0xffff)+BASE-rem;
+		if (sum1>=BASE) sum1 -= BASE;
+		if (sum1>=BASE) sum1 -= BASE;
+		if (sum2>=(BASE<<1)) sum2 -= (BASE<<1);
+		if (sum2>=BASE) sum2 -= BASE;
+		return sum1|(sum2<<16);
+	}
+
+	/* buffers what is written and emits it as chunks of the given type */
+	static class ChunkStream extends OutputStream
+	{
+		DataOutputStream out;
+		byte type[];
+		byte buf[] = new byte[CHUNK];
+		int n;
+
+		ChunkStream(DataOutputStream out, String type)
+		{
+			this.out = out;
+			this.type = type.getBytes();
+		}
+
+		public void write(int b) throws IOException
+		{
+			if (n==buf.length) emit();
+			buf[n++] = (byte)b;
+		}
+
+		public void write(byte b[], int off, int len) throws IOException
+		{
+			while (len>0)
+			{
+				if (n==buf.length) emit();
+				int k = PlanetJ.min(len, buf.length-n);
+				System.arraycopy(b, off, buf, n, k);
+				n += k;
+				off += k;
+				len -= k;
+			}
+		}
+
+		void emit() throws IOException
+		{
+			CRC32 crc = new CRC32();
+			crc.update(type);
+			crc.update(buf, 0, n);
+			out.writeInt(n);
+			out.write(type);
+			out.write(buf, 0, n);
+			out.writeInt((int)crc.getValue());
+			n = 0;
+		}
+
+		/* writes what is left, an empty chunk if nothing was written */
+		public void close() throws IOException
+		{
+			emit();
+		}
+	}
+}
@@ -0,0 +1,124 @@
+package planetj;
+
+import java.util.Vector;
+
+/* Runs a list of post-processing stages in one sweep over the map. */
+
+/* The map is split into bands of columns, one per thread. Every column */
+/* goes through all stages of its channel before the sweep moves on, and */
+/* stages only ever look at the map as rendered, never at output of other */
+/* stages, so the result does not depend on the number of threads. Columns */
+/* are read from the raster and written back in place; a band keeps the */
+/* rendered version of the columns around the one it rewrites, and the */
+/* columns at band boundaries are copied before the sweep starts. */
+
+public class PostProcessor
+{
+	public Vector<IPostStage> stages = new Vector<IPostStage>();
+
+	public PostProcessor add(IPostStage stage)
+	{
+		stages.add(stage);
+		return this;
+	}
+
+	public boolean isEmpty()
+	{
+		return stages.isEmpty();
+	}
+
+	public void run(PlanetJ p)
+	{
+		if (stages.isEmpty()) return;
+
+		final int w = p.Width, h = p.Height;
+		final IRaster maps[] = { p.col, p.shades };
+		final IPostStage chain[][] = new IPostStage[maps.length][];
+		final int reach[] = new int[maps.length];
+
+		for (int m=0; m<maps.length; m++)
+		{
+			Vector<IPostStage> v = new Vector<IPostStage>();
+			for (int s=0; s<stages.size(); s++)
+			{
+				IPostStage stage = stages.get(s);
+				if (stage.channel()!=m) continue;
+				stage.setup(p);
+				v.add(stage);
+				reach[m] = PlanetJ.max(reach[m], stage.reach());
+			}
+			chain[m] = v.toArray(new IPostStage[v.size()]);
+		}
+
+		final int bands = Parallel.bands(p.threads, w);
+		final Profile profile = p.profile;
+
+		/* columns next to a band boundary are read by two bands */
+		final int halo[][][] = new int[maps.length][][];
+		for (int m=0; m<maps.length; m++)
+		{
+			if (chain[m].length==0 || reach[m]==0) continue;
+			halo[m] = new int[w][];
+			for (int b=1; b<bands; b++)
+			{
+				int at = Parallel.from(b, bands, w);
+				for (int k=PlanetJ.max(0, at-reach[m]); k<PlanetJ.min(w, at+reach[m]); k++)
+				{
+					if (halo[m][k]!=null) continue;
+					halo[m][k] = new int[h];
+					maps[m].read(k, 0, halo[m][k], 0, h);
+				}
+			}
+		}
+
+		Parallel.run(p.threads, w, new IBand()
+		{
+			public void run(int band, int from, int to)
+			{
+				long t0 = System.nanoTime();
+				int window[][][] = new int[maps.length][][];
+				int in[][][] = new int[maps.length][][];
+				int out[][] = new int[maps.length][];
+
+				for (int m=0; m<maps.length; m++)
+				{
+					window[m] = new int[2*reach[m]+1][];
+					in[m] = new int[2*reach[m]+1][];
+					out[m] = new int[h];
+				}
+
+				for (int i=from; i<to; i++)
+				{
+					for (int m=0; m<maps.length; m++)
+					{
+						if (chain[m].length==0) continue;
+
+						int r = reach[m], n = 2*r+1;
+						int win[][] = window[m];
+
+						/* columns i-r .. i+r as rendered, loaded once each */
+						for (int k=(i==from ? i-r : i+r); k<=i+r; k++)
+						{
+							if (k<from || k>=to) continue;
+							if (win[k%n]==null) win[k%n] = new int[h];
+							maps[m].read(k, 0, win[k%n], 0, h);
+						}
+
+						for (int k=i-r; k<=i+r; k++)
+						{
+							if (k<0 || k>=w) in[m][k-i+r] = null;
+							else if (k<from || k>=to) in[m][k-i+r] = halo[m][k];
+							else in[m][k-i+r] = win[k%n];
+						}
+
+						System.arraycopy(win[i%n], 0, out[m], 0, h);
+						for (int s=0; s<chain[m].length; s++)
+							chain[m][s].apply(in[m], r, i, out[m]);
+						maps[m].write(i, 0, out[m], 0, h);
+					}
+				}
+				profile.band(from, to, System.nanoTime()-t0);
+			}
+		});
+	}
+}
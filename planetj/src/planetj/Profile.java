@@ -0,0 +1,155 @@
+package planetj;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Vector;
+
+import javax.imageio.ImageIO;
+
+/* Where the time of a render goes. */
+
+/* PlanetJ counts the work of the subdivision as it goes: planet() calls, */
+/* bisections, early stops, levels walked down the TopTree or a zoom */
+/* session instead of bisected, and the use of the level 11 shortcut. */
+/* This adds the time of each phase, of each strip of rows rendered and */
+/* of each band of columns post-processed, reports it all with -X */
+/* (debug), and draws the levels per pixel, bisected or walked, as an */
+/* image with --cost-map. Java 6 has no flight recorder to send events */
+/* to, so the phases are timed here. */
+
+public class Profile
+{
+	static final int SLOWEST = 5; /* strips listed in the report */
+
+	Map<String, Long> phases = new LinkedHashMap<String, Long>(); /* ns */
+	Vector<long[]> strips = new Vector<long[]>(); /* first row, end row, ns, levels */
+	Vector<long[]> bands = new Vector<long[]>(); /* first column, end column, ns */
+
+	public synchronized void phase(String name, long ns)
+	{
+		Long before = phases.get(name);
+		phases.put(name, (before==null ? 0L : before.longValue())+ns);
+	}
+
+	public synchronized void strip(int from, int to, long ns, long levels)
+	{
+		strips.add(new long[] { from, to, ns, levels });
+	}
+
+	public synchronized void band(int from, int to, long ns)
+	{
+		bands.add(new long[] { from, to, ns });
+	}
+
+	public synchronized void report(PlanetJ p, PrintStream out)
+	{
+		out.println("phases:");
+		for (Iterator<Map.Entry<String, Long>> it = phases.entrySet().iterator(); it.hasNext(); )
+		{
+			Map.Entry<String, Long> e = it.next();
+			out.println("  "+e.getKey()+": "+ms(e.getValue().longValue())+" ms");
+		}
+
+		if (p.rowsDone!=null && !p.isComplete())
+			out.println("stopped "+(p.cancelled ? "by cancel" : "at the deadline")+" with "
+					+p.rowsDone.cardinality()+" rows done");
+
+		long calls = p.shortcutHits+p.shortcutMisses;
+		out.println("planet1() calls: "+calls+", level 11 shortcut taken "+percent(p.shortcutHits, calls));
+		out.println("planet() calls: "+p.visits+", bisections "+p.splits+", turns "
+				+(p.visits-p.splits-p.earlyStops)+", early stops "+p.earlyStops);
+		out.println("levels walked down trees: "+p.treeSteps);
+		if (calls>0) out.println("levels per pixel: "+((double)(p.splits+p.treeSteps)/calls)+", "
+				+((double)p.splits/calls)+" of them bisected");
+
+		if (!strips.isEmpty())
+		{
+			Vector<long[]> slowest = new Vector<long[]>(strips);
+			Collections.sort(slowest, new Comparator<long[]>()
+			{
+				public int compare(long[] a, long[] b)
+				{
+					return (a[2]<b[2] ? 1 : (a[2]>b[2] ? -1 : 0));
+				}
+			});
+			out.println("strips: "+strips.size()+", slowest:");
+			for (int k=0; k<PlanetJ.min(SLOWEST, slowest.size()); k++)
+			{
+				long s[] = slowest.get(k);
+				out.println("  rows "+s[0]+"-"+(s[1]-1)+": "+ms(s[2])+" ms, "+s[3]+" levels");
+			}
+		}
+
+		if (!bands.isEmpty())
+		{
+			out.println("post-processing bands:");
+			for (int k=0; k<bands.size(); k++)
+			{
+				long b[] = bands.get(k);
+				out.println("  columns "+b[0]+"-"+(b[1]-1)+": "+ms(b[2])+" ms");
+			}
+		}
+	}
+
+	static String ms(long ns)
+	{
+		return Long.toString((ns+500000)/1000000);
+	}
+
+	static String percent(long n, long of)
+	{
+		return (of==0 ? "-" : (Math.round(1000.0*n/of)/10.0)+"%");
+	}
+
+	/* The levels of every pixel, from black (none) through blue, red */
+	/* and yellow to white for the most any pixel took. Background grey. */
+	public static void costMap(PlanetJ p, String f)
+	{
+		int w = p.Width, h = p.Height, most = 1;
+		int c[] = new int[h];
+
+		for (int i=0; i<w; i++)
+		{
+			p.cost.read(i, 0, c, 0, h);
+			for (int j=0; j<h; j++) most = PlanetJ.max(most, c[j]);
+		}
+
+		BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+		for (int i=0; i<w; i++)
+		{
+			p.cost.read(i, 0, c, 0, h);
+			for (int j=0; j<h; j++)
+				image.setRGB(i, j, (c[j]<0 ? 0x404040 : heat((double)c[j]/most)));
+		}
+
+		String type = (f.toLowerCase().endsWith(".png") ? "png" : "jpg");
+		try
+		{
+			ImageIO.write(image, type, new File(f));
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot write cost map: "+f, e);
+		}
+	}
+
+	static final int RAMP[][] = { {0,0,0}, {0,0,255}, {255,0,0}, {255,255,0}, {255,255,255} };
+
+	static int heat(double t)
+	{
+		double x = t*(RAMP.length-1);
+		int k = PlanetJ.min((int)x, RAMP.length-2);
+		double f = x-k;
+		int rgb = 0;
+		for (int q=0; q<3; q++)
+			rgb = (rgb<<8)|(int)(RAMP[k][q]+f*(RAMP[k+1][q]-RAMP[k][q]));
+		return rgb;
+	}
+}
@@ -0,0 +1,201 @@
+package planetj;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+import javax.imageio.ImageIO;
+
+/* Writes the map as a DeepZoom image pyramid in one pass. */
+
+/* The map is read a strip of tile-high rows at a time. Each strip is cut */
+/* into tiles and halved into the level below, which cuts and halves its */
+/* own strip once that has filled up, and so on down to a single pixel. */
+/* Every level only holds one strip, so memory stays at about twice the */
+/* base strip whatever the size of the map (with --raster-dir the map */
+/* itself is not on the heap either). Tiles are encoded and strips halved */
+/* by all threads. */
+
+/* The pyramid is NAME.dzi with the tiles in NAME_files/level/col_row.png, */
+/* level 0 being one pixel and the last level the full map. */
+
+public class Pyramid
+{
+	PlanetJ planet;
+	File dir;
+	int tile, levels;
+	Level level[];
+
+	public static void write(PlanetJ p, String f, int tile)
+	{
+		if (tile<2 || tile%2!=0)
+		{
+			throw new IllegalArgumentException("Tile size must be even: "+tile);
+		}
+		new Pyramid(p, f, tile).run();
+	}
+
+	Pyramid(PlanetJ p, String f, int tile)
+	{
+		planet = p;
+		this.tile = tile;
+
+		String base = (f.toLowerCase().endsWith(".dzi") ? f.substring(0, f.length()-4) : f);
+		dir = new File(base+"_files");
+		descriptor(new File(base+".dzi"), p.Width, p.Height);
+
+		levels = 1;
+		while ((1<<(levels-1))<PlanetJ.max(p.Width, p.Height)) levels++;
+
+		level = new Level[levels];
+		for (int l=0; l<levels; l++)
+		{
+			int k = levels-1-l;
+			level[l] = new Level(l, (p.Width+(1<<k)-1)>>k, (p.Height+(1<<k)-1)>>k);
+		}
+	}
+
+	void descriptor(File f, int w, int h)
+	{
+		try
+		{
+			Writer out = new OutputStreamWriter(new FileOutputStream(f), "UTF-8");
+			try
+			{
+				out.write("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+				out.write("<Image xmlns=\"http://schemas.microsoft.com/deepzoom/2008\" Format=\"png\" Overlap=\"0\" TileSize=\""+tile+"\">\n");
+				out.write("  <Size Width=\""+w+"\" Height=\""+h+"\"/>\n");
+				out.write("</Image>\n");
+			}
+			finally
+			{
+				out.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot write pyramid descriptor: "+f, e);
+		}
+	}
+
+	void run()
+	{
+		final PlanetJ p = planet;
+		final Level top = level[levels-1];
+
+		for (int j0=0; j0<p.Height; j0+=tile)
+		{
+			final int y0 = j0;
+			final int rows = PlanetJ.min(tile, p.Height-j0);
+
+			Parallel.run(p.threads, p.Width, new IBand()
+			{
+				public void run(int band, int from, int to)
+				{
+					int c[] = new int[rows], s[] = new int[rows];
+					for (int i=from; i<to; i++)
+					{
+						p.col.read(i, y0, c, 0, rows);
+						p.shades.read(i, y0, s, 0, rows);
+						for (int j=0; j<rows; j++)
+							top.strip[j*top.width+i] = p.rgb(c[j], s[j]);
+					}
+				}
+			});
+			top.filled(rows);
+		}
+	}
+
+	/* one level of the pyramid and the strip of it being filled */
+	class Level
+	{
+		int n, width, height;
+		int strip[];
+		int rows, y; /* rows in the strip, row of the map the strip starts at */
+
+		Level(int n, int width, int height)
+		{
+			this.n = n;
+			this.width = width;
+			this.height = height;
+			strip = new int[tile*width];
+			new File(dir, Integer.toString(n)).mkdirs();
+		}
+
+		/* count more rows are in the strip, write and halve it once full */
+		void filled(int count)
+		{
+			rows += count;
+			if (rows<tile && y+rows<height) return;
+
+			final int h = rows;
+			final int across = (width+tile-1)/tile;
+
+			Parallel.run(planet.threads, across, new IBand()
+			{
+				public void run(int band, int from, int to)
+				{
+					for (int t=from; t<to; t++) tile(t, h);
+				}
+			});
+
+			if (n>0)
+			{
+				final Level down = level[n-1];
+				final int half = (h+1)/2;
+				final int at = down.rows;
+
+				Parallel.run(planet.threads, down.width, new IBand()
+				{
+					public void run(int band, int from, int to)
+					{
+						for (int j=0; j<half; j++)
+							for (int i=from; i<to; i++)
+								down.strip[(at+j)*down.width+i] = average(2*i, 2*j, h);
+					}
+				});
+				down.filled(half);
+			}
+
+			y += rows;
+			rows = 0;
+		}
+
+		/* the box filter over the 2x2 pixels (fewer at an odd edge) at x,y */
+		int average(int x, int y, int h)
+		{
+			int r = 0, g = 0, b = 0, k = 0;
+
+			for (int dy=0; dy<2 && y+dy<h; dy++)
+				for (int dx=0; dx<2 && x+dx<width; dx++)
+				{
+					int c = strip[(y+dy)*width+x+dx];
+					r += (c>>16)&255;
+					g += (c>>8)&255;
+					b += c&255;
+					k++;
+				}
+			return ((r+k/2)/k<<16)|((g+k/2)/k<<8)|((b+k/2)/k);
+		}
+
+		void tile(int t, int h)
+		{
+			int x0 = t*tile, w = PlanetJ.min(tile, width-x0);
+			BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_INT_RGB);
+			image.setRGB(0, 0, w, h, strip, x0, width);
+
+			File f = new File(new File(dir, Integer.toString(n)), t+"_"+(y/tile)+".png");
+			try
+			{
+				ImageIO.write(image, "png", f);
+			}
+			catch (IOException e)
+			{
+				throw new IllegalArgumentException("Cannot write tile: "+f, e);
+			}
+		}
+	}
+}
@@ -0,0 +1,42 @@
+package planetj;
+
+/* Maps every colour index through a table. */
+
+public class Recolour implements IPostStage
+{
+	public int table[];
+
+	public Recolour(int table[])
+	{
+		this.table = table;
+	}
+
+	/* everything but black becomes white */
+	public static Recolour bw()
+	{
+		int table[] = new int[256];
+		for (int n=0; n<table.length; n++)
+			table[n] = (n==PlanetJ.BLACK ? PlanetJ.BLACK : PlanetJ.WHITE);
+		return new Recolour(table);
+	}
+
+	public int channel()
+	{
+		return COLOURS;
+	}
+
+	public int reach()
+	{
+		return 0;
+	}
+
+	public void setup(PlanetJ p)
+	{
+	}
+
+	public void apply(int in[][], int r, int i, int out[])
+	{
+		for (int j=0; j<out.length; j++)
+			out[j] = table[out[j]];
+	}
+}
@@ -0,0 +1,179 @@
+package planetj;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+
+/* Altitude, colour and shade of a planet at any number of points, */
+/* without rendering a map. */
+
+/* The points are sorted along a Morton curve through the cube around */
+/* the globe, so consecutive points tend to share the tetrahedra of the */
+/* upper levels and planet1() can take its level 11 shortcut, and the */
+/* sorted points are cut into bands that all threads evaluate, each on */
+/* its own engine (PlanetJ.engine()). No rasters are allocated. Points */
+/* are subdivided to depth levels, PlanetJ's depth for the -m and -h */
+/* given unless set, and always to the end: early termination would only */
+/* give the colour right, not the altitude. Shades are those of the bump */
+/* map, whether or not -B is given, with the sea flat unless */
+/* --water-shade is given. */
+
+/* Latitudes are north, longitudes east, in degrees. Unit vectors are */
+/* x,y,z in the planet's own frame, the one planet1() takes: y is south, */
+/* z points at longitude 0 and x at 90 east on the equator. */
+
+public class Sampler
+{
+	static final int BITS = 10; /* per axis of the Morton key */
+
+	PlanetJ planet;
+	public int depth;
+
+	/* the planet given by prop */
+	public Sampler(Properties prop)
+	{
+		planet = new PlanetJ();
+		planet.init(prop);
+		planet.prepare();
+		depth = planet.Depth;
+	}
+
+	/* the planet of p, which has been set up or prepared */
+	public Sampler(PlanetJ p)
+	{
+		planet = p;
+		depth = p.Depth;
+	}
+
+	/* fills alt, colour and shade (any may be null) for the points at */
+	/* lat[k],lon[k] */
+	public void sample(double lat[], double lon[], double alt[], int colour[], int shade[])
+	{
+		int n = lat.length;
+		if (lon.length!=n)
+		{
+			throw new IllegalArgumentException("Latitudes and longitudes differ in number: "+n+", "+lon.length);
+		}
+
+		double xyz[] = new double[3*n];
+		for (int k=0; k<n; k++)
+		{
+			double la = lat[k]*PlanetJ.DEG2RAD, lo = lon[k]*PlanetJ.DEG2RAD;
+			double c = Math.cos(la);
+			xyz[3*k] = Math.sin(lo)*c;
+			xyz[3*k+1] = -Math.sin(la);
+			xyz[3*k+2] = Math.cos(lo)*c;
+		}
+		sample(xyz, alt, colour, shade);
+	}
+
+	/* the same for the unit vectors x,y,z at xyz[3k..3k+2] */
+	public void sample(final double xyz[], final double alt[], final int colour[], final int shade[])
+	{
+		final int n = xyz.length/3;
+		final long order[] = new long[n];
+		for (int k=0; k<n; k++)
+			order[k] = (morton(xyz[3*k], xyz[3*k+1], xyz[3*k+2])<<32)|k;
+		Arrays.sort(order);
+
+		Parallel.run(planet.threads, n, new IBand()
+		{
+			public void run(int band, int from, int to)
+			{
+				PlanetJ e = planet.engine();
+				e.early = false;
+				e.doshade = true;
+				e.gbuffer = null;
+				e.zoom = null;
+
+				for (int m=from; m<to; m++)
+				{
+					int k = (int)order[m];
+					double x = xyz[3*k], y = xyz[3*k+1], z = xyz[3*k+2];
+					double a;
+					int s;
+					if (e.floatTerrain!=null && depth<=FloatTerrain.MAX_DEPTH)
+					{
+						a = e.floatTerrain.planet1(x, y, z, depth);
+						s = e.floatTerrain.shade;
+					}
+					else
+					{
+						a = e.planet1(x, y, z, depth);
+						s = e.shade;
+					}
+					if (!e.doWaterShade && a<=0.0) s = e.waterShade;
+
+					if (alt!=null) alt[k] = a;
+					if (colour!=null) colour[k] = e.colorTable.color(a, y);
+					if (shade!=null) shade[k] = s;
+				}
+			}
+		});
+	}
+
+	/* BITS bits of each coordinate, interleaved */
+	static long morton(double x, double y, double z)
+	{
+		int max = (1<<BITS)-1;
+		int qx = PlanetJ.min(max, (int)((x+1.0)*0.5*(max+1)));
+		int qy = PlanetJ.min(max, (int)((y+1.0)*0.5*(max+1)));
+		int qz = PlanetJ.min(max, (int)((z+1.0)*0.5*(max+1)));
+		long key = 0;
+		for (int b=0; b<BITS; b++)
+			key |= (long)(((qx>>b)&1)|(((qy>>b)&1)<<1)|(((qz>>b)&1)<<2))<<3*b;
+		return key;
+	}
+
+	/* Samples --points (default 100000) random points of the planet given */
+	/* on the command line, sorted and in the order given, and reports the */
+	/* times and whether both agree. */
+	public static void main(String[] args) throws Exception
+	{
+		Properties prop = Main.procArgs(args);
+		if (prop.getProperty("-s")==null && prop.getProperty("seed")==null)
+		{
+			prop.setProperty("-s", Double.toString(new Random().nextDouble()));
+		}
+		int n = Integer.parseInt(prop.getProperty("points", "100000"));
+
+		Random r = new Random(1);
+		double lat[] = new double[n], lon[] = new double[n];
+		for (int k=0; k<n; k++)
+		{
+			lat[k] = Math.toDegrees(Math.asin(2*r.nextDouble()-1));
+			lon[k] = 360*r.nextDouble()-180;
+		}
+
+		Sampler s = new Sampler(prop);
+		double alt[] = new double[n], alt1[] = new double[n];
+		int colour[] = new int[n], colour1[] = new int[n];
+
+		for (int round=0; round<3; round++)
+		{
+			long t0 = System.nanoTime();
+			s.sample(lat, lon, alt, colour, null);
+			long t1 = System.nanoTime();
+
+			/* one by one, as a caller without the batch would */
+			PlanetJ e = s.planet.engine();
+			e.early = false;
+			e.doshade = true;
+			for (int k=0; k<n; k++)
+			{
+				double la = lat[k]*PlanetJ.DEG2RAD, lo = lon[k]*PlanetJ.DEG2RAD;
+				double x = Math.sin(lo)*Math.cos(la), y = -Math.sin(la), z = Math.cos(lo)*Math.cos(la);
+				alt1[k] = (e.floatTerrain!=null && s.depth<=FloatTerrain.MAX_DEPTH
+						? e.floatTerrain.planet1(x, y, z, s.depth) : e.planet1(x, y, z, s.depth));
+				colour1[k] = e.colorTable.color(alt1[k], y);
+			}
+			long t2 = System.nanoTime();
+
+			int mismatches = 0;
+			for (int k=0; k<n; k++)
+				if (alt[k]!=alt1[k] || colour[k]!=colour1[k]) mismatches++;
+			System.out.println(n+" points, depth "+s.depth+": sorted "+(t1-t0)/1000000+" ms, one by one "
+					+(t2-t1)/1000000+" ms, mismatches "+mismatches);
+		}
+	}
+}
@@ -0,0 +1,322 @@
+package planetj;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Vector;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/* Renders views (tiles) asked for by many callers at once. */
+
+/* A view that is asked for while the same view is still queued or being */
+/* rendered is not rendered again: the caller shares the one in flight, */
+/* and if it asked with a higher priority the queued one is moved up. */
+/* Every caller gets a Future of its own; cancelling it gives up only */
+/* that caller's claim, and the view stops once no caller wants it any */
+/* more. Queued views start highest priority first (VISIBLE, then */
+/* PREFETCH, then BACKGROUND), in the order they were asked for within a */
+/* priority, with no more than the given number rendering at a time and */
+/* no more than perSeed of them for any one planet, so one busy planet */
+/* cannot hold up all the others. A waiting view takes no thread, only */
+/* its place in the queue. Each render still uses its own -t threads. */
+
+public class Scheduler
+{
+	public static final int VISIBLE = 0;
+	public static final int PREFETCH = 1;
+	public static final int BACKGROUND = 2;
+
+	static ExecutorService pool = Executors.newCachedThreadPool(new ThreadFactory()
+	{
+		int n = 0;
+
+		public synchronized Thread newThread(Runnable r)
+		{
+			Thread t = new Thread(r, "planetj-render-"+(n++));
+			t.setDaemon(true);
+			return t;
+		}
+	});
+
+	int workers, perSeed;
+	Map<String, Job> inFlight = new HashMap<String, Job>(); /* queued or rendering, by key */
+	Vector<Job> queue = new Vector<Job>();
+	Map<Double, Integer> running = new HashMap<Double, Integer>(); /* renders per seed */
+	int busy;
+	long asked;
+	public long requests, coalesced, renders;
+
+	public Scheduler(int workers, int perSeed)
+	{
+		if (workers<1 || perSeed<1)
+		{
+			throw new IllegalArgumentException("A scheduler needs at least one render at a time: "+workers+", "+perSeed);
+		}
+		this.workers = workers;
+		this.perSeed = perSeed;
+	}
+
+	class Job extends FutureTask<PlanetJ>
+	{
+		PlanetJ planet;
+		String key;
+		int priority;
+		long order;
+		int claims; /* callers that have asked for it and not cancelled */
+
+		Job(final PlanetJ p, String key, int priority, long order)
+		{
+			super(new Callable<PlanetJ>()
+			{
+				public PlanetJ call()
+				{
+					p.setup();
+					/* process() clears the flag, so a cancel during setup() is seen here */
+					if (!p.cancelled) p.process();
+					return p;
+				}
+			});
+			planet = p;
+			this.key = key;
+			this.priority = priority;
+			this.order = order;
+		}
+
+		/* for everyone who asked for this view, once none of them wants it; */
+		/* a render stops at the next strip */
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			planet.cancel();
+			return super.cancel(mayInterruptIfRunning);
+		}
+
+		protected void done()
+		{
+			finished(this);
+		}
+
+		boolean before(Job j)
+		{
+			return priority<j.priority || (priority==j.priority && order<j.order);
+		}
+	}
+
+	/* one caller's claim on a job */
+	class Claim implements Future<PlanetJ>
+	{
+		Job job;
+		boolean cancelled;
+
+		Claim(Job job)
+		{
+			this.job = job;
+		}
+
+		public boolean cancel(boolean mayInterruptIfRunning)
+		{
+			synchronized (Scheduler.this)
+			{
+				if (cancelled || job.isDone()) return false;
+				cancelled = true;
+				if (--job.claims==0)
+				{
+					/* no later request may join it */
+					finished(job);
+					job.cancel(mayInterruptIfRunning);
+				}
+				return true;
+			}
+		}
+
+		public boolean isCancelled()
+		{
+			synchronized (Scheduler.this)
+			{
+				return cancelled;
+			}
+		}
+
+		public boolean isDone()
+		{
+			return isCancelled() || job.isDone();
+		}
+
+		public PlanetJ get() throws InterruptedException, ExecutionException
+		{
+			if (isCancelled()) throw new CancellationException();
+			return job.get();
+		}
+
+		public PlanetJ get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException
+		{
+			if (isCancelled()) throw new CancellationException();
+			return job.get(timeout, unit);
+		}
+	}
+
+	/* the view given by prop, rendered and ready to save */
+	public synchronized Future<PlanetJ> submit(Properties prop, int priority)
+	{
+		if (priority<VISIBLE || priority>BACKGROUND)
+		{
+			throw new IllegalArgumentException("Unknown priority: "+priority);
+		}
+
+		PlanetJ p = new PlanetJ();
+		p.init(prop);
+		String key = key(p);
+		requests++;
+
+		Job j = inFlight.get(key);
+		if (j!=null)
+		{
+			coalesced++;
+			if (priority<j.priority) j.priority = priority;
+			j.claims++;
+			return new Claim(j);
+		}
+
+		j = new Job(p, key, priority, asked++);
+		j.claims = 1;
+		inFlight.put(key, j);
+		queue.add(j);
+		dispatch();
+		return new Claim(j);
+	}
+
+	/* what makes two views the same picture, rendered as far and with the */
+	/* same buffers and layers beside it; a time-limited view is never */
+	/* shared with one that is not */
+	static String key(PlanetJ p)
+	{
+		return p.parameters()+" "+p.vgrid+" "+p.hgrid+" "+p.do_outline+" "+p.do_bw
+			+" "+p.edgeWidth+" "+p.edgeColor+" "+p.band+"/"+p.bands+" "+p.merge
+			+" "+p.timeLimit+" "+p.order+" "+p.deferred+" "+p.normalMap+" "+p.costMap
+			+" "+p.layers+" "+p.contours+" "+Arrays.toString(p.contourLevels)+" "+p.contourTolerance
+			+" "+p.tiles+" "+p.pyramid+" "+p.tileSize;
+	}
+
+	/* starts the first queued views there is room for */
+	synchronized void dispatch()
+	{
+		while (busy<workers)
+		{
+			Job best = null;
+			for (int k=0; k<queue.size(); k++)
+			{
+				Job j = queue.get(k);
+				if (running(j)<perSeed && (best==null || j.before(best))) best = j;
+			}
+			if (best==null) return;
+
+			final Job j = best;
+			queue.remove(j);
+			busy++;
+			running.put(j.planet.rseed, running(j)+1);
+			renders++;
+			pool.execute(new Runnable()
+			{
+				public void run()
+				{
+					try
+					{
+						j.run();
+					}
+					finally
+					{
+						released(j);
+					}
+				}
+			});
+		}
+	}
+
+	int running(Job j)
+	{
+		Integer n = running.get(j.planet.rseed);
+		return (n==null ? 0 : n.intValue());
+	}
+
+	synchronized void released(Job j)
+	{
+		busy--;
+		int n = running(j)-1;
+		if (n==0) running.remove(j.planet.rseed);
+		else running.put(j.planet.rseed, n);
+		dispatch();
+	}
+
+	/* done, failed or cancelled: a later request renders it afresh */
+	synchronized void finished(Job j)
+	{
+		if (inFlight.get(j.key)==j) inFlight.remove(j.key);
+		queue.remove(j);
+	}
+
+	public synchronized int queued()
+	{
+		return queue.size();
+	}
+
+	/* Asks for --views (default 8) views of the planet given on the command */
+	/* line, panned --step degrees (default 45) apart, as BACKGROUND work, */
+	/* then the second half of them again by --viewers (default 4) viewers */
+	/* as VISIBLE, and reports how many were rendered and in what order */
+	/* they finished. */
+	public static void main(String[] args) throws Exception
+	{
+		Properties prop = Main.procArgs(args);
+		if (prop.getProperty("-s")==null && prop.getProperty("seed")==null)
+		{
+			prop.setProperty("-s", Double.toString(new Random().nextDouble()));
+		}
+		int views = Integer.parseInt(prop.getProperty("views", "8"));
+		int viewers = Integer.parseInt(prop.getProperty("viewers", "4"));
+		double step = Double.parseDouble(prop.getProperty("step", "45"));
+		double longitude = Double.parseDouble(prop.getProperty("-l", prop.getProperty("longitude", "0.0")));
+		prop.remove("longitude");
+
+		Scheduler s = new Scheduler(Parallel.threads(0), Parallel.threads(0));
+		Vector<Future<PlanetJ>> futures = new Vector<Future<PlanetJ>>();
+		long t0 = System.currentTimeMillis();
+
+		for (int v=0; v<views; v++)
+		{
+			prop.setProperty("-l", Double.toString(longitude+v*step));
+			futures.add(s.submit(prop, BACKGROUND));
+		}
+		for (int u=0; u<viewers; u++)
+			for (int v=views-1; v>=views/2; v--)
+			{
+				prop.setProperty("-l", Double.toString(longitude+v*step));
+				futures.add(s.submit(prop, VISIBLE));
+			}
+
+		/* the views in the order they came out */
+		Vector<Integer> order = new Vector<Integer>();
+		while (order.size()<views)
+		{
+			for (int v=0; v<views; v++)
+				if (futures.get(v).isDone() && !order.contains(v)) order.add(v);
+			Thread.sleep(5);
+		}
+		for (int k=0; k<futures.size(); k++) futures.get(k).get();
+
+		System.out.println(s.requests+" requests, "+s.coalesced+" coalesced, "+s.renders+" rendered in "
+				+(System.currentTimeMillis()-t0)+" ms");
+		System.out.print("finished:");
+		for (int k=0; k<order.size(); k++) System.out.print(" "+(longitude+order.get(k)*step));
+		System.out.println();
+	}
+}
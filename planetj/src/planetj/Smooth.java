@@ -0,0 +1,34 @@
+package planetj;
+
+/* Softens the bump map shading with a small forward kernel. */
+
+public class Smooth implements IPostStage
+{
+	int w, h;
+
+	public int channel()
+	{
+		return SHADES;
+	}
+
+	public int reach()
+	{
+		return 1;
+	}
+
+	public void setup(PlanetJ p)
+	{
+		w = p.Width;
+		h = p.Height;
+	}
+
+	public void apply(int in[][], int r, int i, int out[])
+	{
+		if (i>=w-2) return;
+
+		int s[] = in[r], n[] = in[r+1];
+
+		for (int j=0; j<h-2; j++)
+			out[j] = (4*s[j]+2*s[j+1]+2*n[j]+n[j+2]+4)/9;
+	}
+}
@@ -0,0 +1,375 @@
+package planetj;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Properties;
+import java.util.Random;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/* The rendered map in a file of its own, elevation, colours and shades */
+/* cut into deflated tiles that can be read one at a time. */
+
+/* The file starts with "PJTF", the version, the parameters() of the */
+/* planet, the size of the map and of a tile, whether it is shaded, the */
+/* colour table (256 times red, green, blue) and the channels (name and */
+/* bytes per value). An index follows with the offset (long) and length */
+/* (int) of every tile of every channel, tiles row by row and channels */
+/* within a tile, then the tiles. A tile is its values row by row, big- */
+/* endian, deflated; values wider than a byte are stored a byte plane at */
+/* a time (all first bytes, then all second bytes, ..), which deflates */
+/* floats far better. Elevation is the float of the elevation layer. */
+
+/* Tiles are deflated a strip of tile rows at a time by all threads and */
+/* written in order. A reader maps the file (in chunks of 1 GB, as */
+/* MappedRaster does) and only inflates the tiles it is asked for; the */
+/* buffers are only read with absolute gets, so threads can share one. */
+
+public class TileFile
+{
+	static final byte MAGIC[] = { 'P', 'J', 'T', 'F' };
+	static final int VERSION = 1;
+	static final int CHUNK_BITS = 30;
+	static final long CHUNK_MASK = (1L<<CHUNK_BITS)-1;
+
+	public static final int ELEVATION = 0;
+	public static final int COLOUR = 1;
+	public static final int SHADE = 2;
+	static final String NAMES[] = { "elevation", "colour", "shade" };
+	static final int BYTES[] = { 4, 1, 1 };
+
+	public String parameters;
+	public int width, height, tile, across, down;
+	public boolean shaded;
+	public int palette[] = new int[256]; /* packed RGB of each colour index */
+	public String names[];
+	public int bytes[];
+
+	RandomAccessFile raf;
+	MappedByteBuffer chunks[];
+	long index;
+
+	/* writes the map of p, which needs the elevation layer */
+	public static void write(PlanetJ p, String f, int tile)
+	{
+		if (p.layerData==null)
+		{
+			throw new IllegalStateException("The tile file stores the elevation layer, which was not kept");
+		}
+		if (tile<1)
+		{
+			throw new IllegalArgumentException("Tile size must be positive: "+tile);
+		}
+
+		final IRaster channels[] = { p.layerData.elevation, p.col, p.shades };
+		final int w = p.Width, h = p.Height, t = tile;
+		int across = (w+t-1)/t, down = (h+t-1)/t;
+
+		try
+		{
+			ByteArrayOutputStream header = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(header);
+			out.write(MAGIC);
+			out.writeInt(VERSION);
+			out.writeUTF(p.parameters());
+			out.writeInt(w);
+			out.writeInt(h);
+			out.writeInt(t);
+			out.writeBoolean(p.doshade);
+			for (int c=0; c<256; c++)
+			{
+				out.writeByte(p.rtable[c]);
+				out.writeByte(p.gtable[c]);
+				out.writeByte(p.btable[c]);
+			}
+			out.writeInt(channels.length);
+			for (int c=0; c<channels.length; c++)
+			{
+				out.writeUTF(NAMES[c]);
+				out.writeByte(BYTES[c]);
+			}
+			out.flush();
+
+			RandomAccessFile raf = new RandomAccessFile(f, "rw");
+			try
+			{
+				raf.setLength(0);
+				raf.write(header.toByteArray());
+				long index = raf.getFilePointer();
+				byte entries[] = new byte[12*across*down*channels.length];
+				raf.write(entries);
+				ByteBuffer entry = ByteBuffer.wrap(entries);
+
+				final int rows[][] = new int[channels.length][];
+				for (int y=0; y<down; y++)
+				{
+					final int j0 = y*t, n = PlanetJ.min(t, h-j0);
+					for (int c=0; c<channels.length; c++)
+					{
+						if (rows[c]==null) rows[c] = new int[w*t];
+						for (int i=0; i<w; i++) channels[c].read(i, j0, rows[c], i*n, n);
+					}
+
+					final byte packed[][] = new byte[across*channels.length][];
+					Parallel.run(p.threads, across, new IBand()
+					{
+						public void run(int band, int from, int to)
+						{
+							Deflater deflater = new Deflater();
+							for (int x=from; x<to; x++)
+								for (int c=0; c<channels.length; c++)
+									packed[x*channels.length+c] = deflate(deflater, rows[c], n, x*t, PlanetJ.min(t, w-x*t), BYTES[c]);
+							deflater.end();
+						}
+					});
+
+					for (int k=0; k<packed.length; k++)
+					{
+						entry.putLong(raf.getFilePointer());
+						entry.putInt(packed[k].length);
+						raf.write(packed[k]);
+					}
+				}
+
+				raf.seek(index);
+				raf.write(entries);
+			}
+			finally
+			{
+				raf.close();
+			}
+		}
+		catch (IOException e)
+		{
+			throw new IllegalArgumentException("Cannot write tile file: "+f, e);
+		}
+	}
+
+	/* the tile of columns x0..x0+tw-1 from a strip of n rows stored by column */
+	static byte[] deflate(Deflater deflater, int strip[], int n, int x0, int tw, int bytes)
+	{
+		byte raw[] = new byte[tw*n*bytes];
+		int plane = tw*n;
+		for (int l=0; l<n; l++)
+			for (int i=0; i<tw; i++)
+			{
+				int v = strip[(x0+i)*n+l], at = l*tw+i;
+				for (int b=0; b<bytes; b++)
+					raw[b*plane+at] = (byte)(v>>8*(bytes-1-b));
+			}
+
+		deflater.reset();
+		deflater.setInput(raw);
+		deflater.finish();
+		ByteArrayOutputStream out = new ByteArrayOutputStream(raw.length/4+64);
+		byte buf[] = new byte[1<<16];
+		while (!deflater.finished())
+		{
+			int k = deflater.deflate(buf);
+			out.write(buf, 0, k);
+		}
+		return out.toByteArray();
+	}
+
+	/* opens f for reading */
+	public TileFile(File f)
+	{
+		try
+		{
+			raf = new RandomAccessFile(f, "r");
+			long size = raf.length();
+			FileChannel fc = raf.getChannel();
+			chunks = new MappedByteBuffer[(int)((size+CHUNK_MASK)>>CHUNK_BITS)];
+			for (int k=0; k<chunks.length; k++)
+			{
+				long at = (long)k<<CHUNK_BITS;
+				chunks[k] = fc.map(FileChannel.MapMode.READ_ONLY, at, Math.min(CHUNK_MASK+1, size-at));
+			}
+
+			int head = (int)Math.min(size, 1<<16); /* more than any header */
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes(0, head)));
+			byte magic[] = new byte[4];
+			in.readFully(magic);
+			if (magic[0]!=MAGIC[0] || magic[1]!=MAGIC[1] || magic[2]!=MAGIC[2] || magic[3]!=MAGIC[3])
+			{
+				throw new IllegalArgumentException("Not a tile file: "+f);
+			}
+			int version = in.readInt();
+			if (version!=VERSION)
+			{
+				throw new IllegalArgumentException("Tile file version "+version+" is not "+VERSION+": "+f);
+			}
+			parameters = in.readUTF();
+			width = in.readInt();
+			height = in.readInt();
+			tile = in.readInt();
+			shaded = in.readBoolean();
+			for (int c=0; c<256; c++)
+				palette[c] = (in.readUnsignedByte()<<16)|(in.readUnsignedByte()<<8)|in.readUnsignedByte();
+			names = new String[in.readInt()];
+			bytes = new int[names.length];
+			for (int c=0; c<names.length; c++)
+			{
+				names[c] = in.readUTF();
+				bytes[c] = in.readByte();
+			}
+			across = (width+tile-1)/tile;
+			down = (height+tile-1)/tile;
+			index = head-in.available();
+		}
+		catch (IOException e)
+		{
+			close();
+			throw new IllegalArgumentException("Cannot read tile file: "+f, e);
+		}
+	}
+
+	/* n bytes from offset at, across chunks if need be */
+	byte[] bytes(long at, int n)
+	{
+		byte b[] = new byte[n];
+		int done = 0;
+		while (done<n)
+		{
+			long p = at+done;
+			ByteBuffer chunk = chunks[(int)(p>>>CHUNK_BITS)].duplicate();
+			chunk.position((int)(p&CHUNK_MASK));
+			int k = Math.min(n-done, chunk.remaining());
+			chunk.get(b, done, k);
+			done += k;
+		}
+		return b;
+	}
+
+	public int channel(String name)
+	{
+		for (int c=0; c<names.length; c++)
+			if (names[c].equals(name)) return c;
+		throw new IllegalArgumentException("No channel "+name+" in the tile file");
+	}
+
+	public int tileWidth(int x)
+	{
+		return Math.min(tile, width-x*tile);
+	}
+
+	public int tileHeight(int y)
+	{
+		return Math.min(tile, height-y*tile);
+	}
+
+	/* the values of tile x,y of a channel, row by row */
+	public int[] tile(int channel, int x, int y)
+	{
+		if (x<0 || x>=across || y<0 || y>=down)
+		{
+			throw new IllegalArgumentException("No tile "+x+","+y+" in a file of "+across+"x"+down);
+		}
+		long entry = index+12L*((long)(y*across+x)*names.length+channel);
+		byte e[] = bytes(entry, 12);
+		long at = ByteBuffer.wrap(e).getLong(0);
+		int length = ByteBuffer.wrap(e).getInt(8);
+
+		int tw = tileWidth(x), th = tileHeight(y), b = bytes[channel], plane = tw*th;
+		byte raw[] = new byte[plane*b];
+		Inflater inflater = new Inflater();
+		try
+		{
+			inflater.setInput(bytes(at, length));
+			if (inflater.inflate(raw)!=raw.length)
+			{
+				throw new IllegalArgumentException("Tile "+x+","+y+" is short");
+			}
+		}
+		catch (DataFormatException ex)
+		{
+			throw new IllegalArgumentException("Tile "+x+","+y+" is corrupt", ex);
+		}
+		finally
+		{
+			inflater.end();
+		}
+
+		int v[] = new int[plane];
+		for (int k=0; k<plane; k++)
+		{
+			int value = 0;
+			for (int q=0; q<b; q++) value = (value<<8)|(raw[q*plane+k]&0xff);
+			v[k] = value;
+		}
+		return v;
+	}
+
+	/* the values of the w x h pixels from x,y, row by row, from the tiles */
+	/* they lie in */
+	public void read(int channel, int x, int y, int w, int h, int out[])
+	{
+		for (int ty=y/tile; ty<=(y+h-1)/tile; ty++)
+			for (int tx=x/tile; tx<=(x+w-1)/tile; tx++)
+			{
+				int v[] = tile(channel, tx, ty);
+				int tw = tileWidth(tx);
+				int i0 = Math.max(x, tx*tile), i1 = Math.min(x+w, tx*tile+tw);
+				int j0 = Math.max(y, ty*tile), j1 = Math.min(y+h, ty*tile+tileHeight(ty));
+				for (int j=j0; j<j1; j++)
+					System.arraycopy(v, (j-ty*tile)*tw+i0-tx*tile, out, (j-y)*w+i0-x, i1-i0);
+			}
+	}
+
+	/* the packed RGB of a colour index and shade, as PlanetJ.rgb() */
+	public int rgb(int colour, int shade)
+	{
+		int c = palette[colour], rgb = 0;
+		for (int q=16; q>=0; q-=8)
+		{
+			int v = (c>>q)&255;
+			if (shaded) v = Math.min(255, shade*v/150);
+			rgb |= v<<q;
+		}
+		return rgb;
+	}
+
+	public void close()
+	{
+		chunks = null;
+		try
+		{
+			if (raf!=null) raf.close();
+		}
+		catch (IOException e)
+		{
+			/* nothing was written */
+		}
+		raf = null;
+	}
+
+	/* Reads --reads (default 1000) random tiles of each channel of the tile */
+	/* file given as --tiles and reports the time per tile. */
+	public static void main(String[] args) throws Exception
+	{
+		Properties prop = Main.procArgs(args);
+		TileFile f = new TileFile(new File(prop.getProperty("tiles")));
+		int reads = Integer.parseInt(prop.getProperty("reads", "1000"));
+		Random r = new Random(1);
+
+		System.out.println(f.width+"x"+f.height+" in "+f.across+"x"+f.down+" tiles of "+f.tile+": "+f.parameters);
+		for (int round=0; round<3; round++)
+			for (int c=0; c<f.names.length; c++)
+			{
+				long t0 = System.nanoTime(), sum = 0;
+				for (int k=0; k<reads; k++)
+					sum += f.tile(c, r.nextInt(f.across), r.nextInt(f.down))[0];
+				System.out.println(f.names[c]+": "+(System.nanoTime()-t0)/1000/reads+" us per tile ("+sum+")");
+			}
+		f.close();
+	}
+}
@@ -0,0 +1,206 @@
+package planetj;
+
+/* The first levels of the subdivision, worked out once for all points. */
+
+/* planet() starts every point at the same tetrahedron with the same */
+/* seeds, so the tetrahedra of the first levels are the same for every */
+/* map of a planet. They are kept here as a complete binary tree packed */
+/* in arrays: node n has the children 2n+1 and 2n+2 and holds the */
+/* tetrahedron in the order planet() turns it to; nodes above the last */
+/* level also hold the new vertex e, the old vertices c and d and the */
+/* side of plane ecd that the first child is on. A point goes down the */
+/* tree with one plane test per level (the same expression planet() */
+/* uses, so it ends up in the same place) and planet() carries on. */
+
+public class TopTree
+{
+	static final int TETRA = 20, SPLIT = 10;
+	static final int MAX_LEVELS = 24;
+
+	static TopTree cached;
+	static String cachedKey;
+
+	public int levels;
+	double tetra[]; /* a,b,c,d, as,bs,cs,ds, ax,ay,az, .. dx,dy,dz */
+	double split[]; /* ex,ey,ez, cx,cy,cz, dx,dy,dz, side */
+
+	/* the tree for the planet of p, as deep as p.treeCache MB allow */
+	public static synchronized TopTree get(PlanetJ p)
+	{
+		int levels = levels(p);
+		if (levels==0) return null;
+
+		String key = levels+" "+key(p);
+		if (!key.equals(cachedKey))
+		{
+			cached = null; /* let the old one go before building */
+			cached = new TopTree(p, levels);
+			cachedKey = key;
+		}
+		return cached;
+	}
+
+	/* levels that fit in p.treeCache MB */
+	static int levels(PlanetJ p)
+	{
+		int levels = 0;
+		while (levels<MAX_LEVELS && bytes(levels+1)<=(long)p.treeCache<<20) levels++;
+		return levels;
+	}
+
+	/* what the subdivision depends on */
+	static String key(PlanetJ p)
+	{
+		return p.r1+" "+p.r2+" "+p.r3+" "+p.r4+" "+p.initialAltitude
+			+" "+p.altitudeWeight+" "+p.distanceWeight+" "+p.fastMath;
+	}
+
+	/* the tetrahedron planet1() starts from, laid out like a node */
+	static double[] top(PlanetJ p)
+	{
+		double i = p.initialAltitude;
+		return new double[] { i,i,i,i,
+				p.r1,p.r2,p.r3,p.r4,
+				0.0, 0.0, 3.01,
+				0.0, Math.sqrt(8.0)+.01, -1.01,
+				-Math.sqrt(6.0)-.01, -Math.sqrt(2.0)-.01, -1.01,
+				Math.sqrt(6.0)-.005, -Math.sqrt(2.0)-.005, -1.005 };
+	}
+
+	static long bytes(int levels)
+	{
+		return 8L*(TETRA*((2L<<levels)-1)+SPLIT*((1L<<levels)-1));
+	}
+
+	TopTree(PlanetJ p, int levels)
+	{
+		this(p, levels, top(p));
+	}
+
+	/* levels below the tetrahedron t, laid out like a node */
+	TopTree(PlanetJ p, int levels, double t[])
+	{
+		this.levels = levels;
+		tetra = new double[TETRA*((2<<levels)-1)];
+		split = new double[SPLIT*((1<<levels)-1)];
+
+		build(p, 0, 0, t[0],t[1],t[2],t[3], t[4],t[5],t[6],t[7],
+				t[8],t[9],t[10], t[11],t[12],t[13], t[14],t[15],t[16], t[17],t[18],t[19]);
+	}
+
+	/* the first steps of planet() for node n on level k */
+	void build(PlanetJ p, int n, int k,
+			double a, double b, double c, double d,
+			double as, double bs, double cs, double ds,
+			double ax, double ay, double az,
+			double bx, double by, double bz,
+			double cx, double cy, double cz,
+			double dx, double dy, double dz)
+	{
+		double t[] = { a,b,c,d, as,bs,cs,ds, ax,ay,az, bx,by,bz, cx,cy,cz, dx,dy,dz };
+		System.arraycopy(t, 0, tetra, TETRA*n, TETRA);
+		if (k==levels) return;
+
+		double abx,aby,abz, acx,acy,acz, adx,ady,adz;
+		double bcx,bcy,bcz, bdx,bdy,bdz, cdx,cdy,cdz;
+		double lab, lac, lad, lbc, lbd, lcd;
+
+		abx = ax-bx; aby = ay-by; abz = az-bz;
+		acx = ax-cx; acy = ay-cy; acz = az-cz;
+		lab = abx*abx+aby*aby+abz*abz;
+		lac = acx*acx+acy*acy+acz*acz;
+		if (lab<lac) {
+			build(p, n, k, a,c,b,d, as,cs,bs,ds, ax,ay,az, cx,cy,cz, bx,by,bz, dx,dy,dz);
+			return;
+		}
+		adx = ax-dx; ady = ay-dy; adz = az-dz;
+		lad = adx*adx+ady*ady+adz*adz;
+		if (lab<lad) {
+			build(p, n, k, a,d,b,c, as,ds,bs,cs, ax,ay,az, dx,dy,dz, bx,by,bz, cx,cy,cz);
+			return;
+		}
+		bcx = bx-cx; bcy = by-cy; bcz = bz-cz;
+		lbc = bcx*bcx+bcy*bcy+bcz*bcz;
+		if (lab<lbc) {
+			build(p, n, k, b,c,a,d, bs,cs,as,ds, bx,by,bz, cx,cy,cz, ax,ay,az, dx,dy,dz);
+			return;
+		}
+		bdx = bx-dx; bdy = by-dy; bdz = bz-dz;
+		lbd = bdx*bdx+bdy*bdy+bdz*bdz;
+		if (lab<lbd) {
+			build(p, n, k, b,d,a,c, bs,ds,as,cs, bx,by,bz, dx,dy,dz, ax,ay,az, cx,cy,cz);
+			return;
+		}
+		cdx = cx-dx; cdy = cy-dy; cdz = cz-dz;
+		lcd = cdx*cdx+cdy*cdy+cdz*cdz;
+		if (lab<lcd) {
+			build(p, n, k, c,d,a,b, cs,ds,as,bs, cx,cy,cz, dx,dy,dz, ax,ay,az, bx,by,bz);
+			return;
+		}
+
+		double ex, ey, ez, e, es, l1;
+		double eax,eay,eaz, ecx,ecy,ecz, edx,edy,edz;
+
+		ex = 0.5*(ax+bx); ey = 0.5*(ay+by); ez = 0.5*(az+bz);
+		es = PlanetJ.rand2(as,bs);
+		if (p.fastMath) l1 = FastMath.distance(lab);
+		else {
+			if (lab>1.0) lab = Math.pow(lab,0.75);
+			l1 = Math.pow(lab,0.45);
+		}
+		e = 0.5*(a+b)+es*(p.altitudeWeight*Math.abs(a-b)+p.distanceWeight*l1);
+		eax = ax-ex; eay = ay-ey; eaz = az-ez;
+		ecx = cx-ex; ecy = cy-ey; ecz = cz-ez;
+		edx = dx-ex; edy = dy-ey; edz = dz-ez;
+
+		double s[] = { ex,ey,ez, cx,cy,cz, dx,dy,dz,
+				eax*ecy*edz+eay*ecz*edx+eaz*ecx*edy-eaz*ecy*edx-eay*ecx*edz-eax*ecz*edy };
+		System.arraycopy(s, 0, split, SPLIT*n, SPLIT);
+
+		build(p, 2*n+1, k+1, c,d,a,e, cs,ds,as,es, cx,cy,cz, dx,dy,dz, ax,ay,az, ex,ey,ez);
+		build(p, 2*n+2, k+1, c,d,b,e, cs,ds,bs,es, cx,cy,cz, dx,dy,dz, bx,by,bz, ex,ey,ez);
+	}
+
+	/* planet1() for a point the level 11 shortcut does not cover; stops */
+	/* 11 levels short of depth so planet() still sets that shortcut */
+	public double planet(PlanetJ p, double x, double y, double z, int depth)
+	{
+		int k = PlanetJ.min(levels, (depth>=11 ? depth-11 : depth));
+		p.treeSteps += k;
+		return planet(p, x, y, z, depth, node(x, y, z, k), k);
+	}
+
+	/* the node on level k that holds x,y,z */
+	int node(double x, double y, double z, int k)
+	{
+		int n = 0;
+
+		for (int l=0; l<k; l++)
+		{
+			double s[] = split;
+			int o = SPLIT*n;
+			double ex = s[o], ey = s[o+1], ez = s[o+2];
+			double epx = x-ex, epy = y-ey, epz = z-ez;
+			double ecx = s[o+3]-ex, ecy = s[o+4]-ey, ecz = s[o+5]-ez;
+			double edx = s[o+6]-ex, edy = s[o+7]-ey, edz = s[o+8]-ez;
+			if (s[o+9]*
+					(epx*ecy*edz+epy*ecz*edx+epz*ecx*edy
+							-epz*ecy*edx-epy*ecx*edz-epx*ecz*edy)>0.0)
+				n = 2*n+1;
+			else
+				n = 2*n+2;
+		}
+		return n;
+	}
+
+	/* planet() for x,y,z from node n, on level k */
+	double planet(PlanetJ p, double x, double y, double z, int depth, int n, int k)
+	{
+		double t[] = tetra;
+		int o = TETRA*n;
+		return(p.planet(t[o],t[o+1],t[o+2],t[o+3], t[o+4],t[o+5],t[o+6],t[o+7],
+				t[o+8],t[o+9],t[o+10], t[o+11],t[o+12],t[o+13],
+				t[o+14],t[o+15],t[o+16], t[o+17],t[o+18],t[o+19],
+				x,y,z, depth-k));
+	}
+}
@@ -0,0 +1,122 @@
+package planetj;
+
+import java.util.Properties;
+import java.util.Random;
+
+/* The order render() visits the pixels of a strip of rows in. */
+
+/* planet1() only gets to skip the upper levels when a pixel lies in the */
+/* tetrahedron of the pixel before, which holds for about as many pixels */
+/* across as there are levels below it. Row by row, the next row comes */
+/* back to a tetrahedron long after leaving it; walking square tiles along */
+/* a Morton (Z) or Hilbert curve keeps neighbouring pixels together in */
+/* both directions. Strips are TILE rows high, so rows still finish in */
+/* order for the checkpoints and bands. */
+
+public class Traversal
+{
+	public static final int TILE = 32;
+
+	public final int size; /* rows per strip, columns per tile */
+	public final int dx[], dy[]; /* offsets in the tile, in visiting order */
+
+	public Traversal(String order)
+	{
+		if (order.equals("scan"))
+		{
+			size = 1;
+			dx = new int[] { 0 };
+			dy = new int[] { 0 };
+			return;
+		}
+
+		size = TILE;
+		dx = new int[TILE*TILE];
+		dy = new int[TILE*TILE];
+		for (int d=0; d<TILE*TILE; d++)
+		{
+			if (order.equals("morton")) morton(d, dx, dy);
+			else if (order.equals("hilbert")) hilbert(d, dx, dy);
+			else throw new IllegalArgumentException("Unknown pixel order: "+order);
+		}
+	}
+
+	/* the bits of d alternate between x and y */
+	static void morton(int d, int dx[], int dy[])
+	{
+		int x = 0, y = 0;
+		for (int b=0; (1<<2*b)<TILE*TILE; b++)
+		{
+			x |= ((d>>2*b)&1)<<b;
+			y |= ((d>>2*b+1)&1)<<b;
+		}
+		dx[d] = x;
+		dy[d] = y;
+	}
+
+	/* the d-th point of the Hilbert curve through the tile */
+	static void hilbert(int d, int dx[], int dy[])
+	{
+		int x = 0, y = 0, t = d;
+		for (int s=1; s<TILE; s*=2)
+		{
+			int rx = 1&(t/2);
+			int ry = 1&(t^rx);
+			if (ry==0)
+			{
+				if (rx==1)
+				{
+					x = s-1-x;
+					y = s-1-y;
+				}
+				int tmp = x; x = y; y = tmp;
+			}
+			x += s*rx;
+			y += s*ry;
+			t /= 4;
+		}
+		dx[d] = x;
+		dy[d] = y;
+	}
+
+	/* Renders the view given on the command line (same options as Main) */
+	/* in each order and reports the time and how often planet1() could */
+	/* start from the tetrahedron of the pixel before. */
+	public static void main(String[] args) throws Exception
+	{
+		Properties prop = Main.procArgs(args);
+		if (prop.getProperty("-s")==null && prop.getProperty("seed")==null)
+		{
+			prop.setProperty("-s", Double.toString(new Random().nextDouble()));
+		}
+		String orders[] = { "scan", "morton", "hilbert" };
+
+		/* let the JIT see every order before timing any */
+		Properties small = new Properties();
+		small.putAll(prop);
+		small.setProperty("-w", "128");
+		small.setProperty("-h", "64");
+		for (int k=0; k<orders.length; k++)
+			render(small, orders[k]);
+
+		for (int k=0; k<orders.length; k++)
+		{
+			long t0 = System.currentTimeMillis();
+			PlanetJ p = render(prop, orders[k]);
+			long t1 = System.currentTimeMillis();
+			long all = p.shortcutHits+p.shortcutMisses;
+			System.out.println(orders[k]+": "+(t1-t0)+" ms, shortcut hits "
+					+(100.0*p.shortcutHits/Math.max(1L, all))+"% of "+all);
+		}
+	}
+
+	static PlanetJ render(Properties prop, String order)
+	{
+		PlanetJ planet = new PlanetJ();
+		planet.init(prop);
+		planet.order = order;
+		planet.setup();
+		planet.process();
+		return planet;
+	}
+}
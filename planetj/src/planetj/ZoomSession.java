@@ -0,0 +1,307 @@
+package planetj;
+
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.Random;
+import java.util.Vector;
+
+/* Renders a series of views of one planet, each zoomed in (or panned) */
+/* from the last, without working out the same tetrahedra again. */
+
+/* The session keeps the part of the subdivision the view goes through */
+/* below the planet's TopTree, as trees of the tetrahedra that hold at */
+/* least MIN_POINTS of every SAMPLE-th pixel across and down, one under */
+/* each node on the TopTree's last level the samples reach. For the next */
+/* view the samples are sorted down the TopTree and the trees again (one */
+/* plane test per level, the same one planet() makes); nodes they still */
+/* reach are kept as they are, nodes they no longer reach are dropped, */
+/* and only the levels the view has zoomed in by are subdivided anew. */
+/* While rendering, a pixel goes down the TopTree, then down the tree */
+/* under the node it reaches as far as that holds and its depth allows, */
+/* and planet() carries on from there, so views come out exactly as they */
+/* do rendered on their own. Without a TopTree there is one tree, from */
+/* the first tetrahedron. */
+
+public class ZoomSession
+{
+	static final int SAMPLE = 4;
+	static final int MIN_POINTS = 2; /* fewer samples than this are left to the level 11 shortcut */
+	static final int NODE = 8*(TopTree.TETRA+TopTree.SPLIT)+64; /* bytes per node, about */
+
+	String key;
+	int base; /* level of the roots, the TopTree's last */
+	int keys[] = new int[0]; /* the TopTree node of each root, ascending */
+	Node roots[] = new Node[0];
+	public int nodes, reused; /* nodes of the last view, and how many it kept from the one before */
+	public long growTime; /* ms spent sorting the last view into the tree */
+
+	static class Node
+	{
+		double tetra[]; /* as planet() is called with it */
+		double ex, ey, ez, ecx, ecy, ecz, edx, edy, edz, side; /* the split: e, c-e, d-e */
+		Node first, second;
+		int level;
+
+		Node(double tetra[], int level)
+		{
+			this.tetra = tetra;
+			this.level = level;
+		}
+
+		/* the split and whichever children are missing */
+		void subdivide(PlanetJ p)
+		{
+			TopTree t = new TopTree(p, 1, tetra);
+			double s[] = t.split;
+			ex = s[0]; ey = s[1]; ez = s[2];
+			ecx = s[3]-ex; ecy = s[4]-ey; ecz = s[5]-ez;
+			edx = s[6]-ex; edy = s[7]-ey; edz = s[8]-ez;
+			side = s[9];
+			if (first==null) first = new Node(copy(t.tetra, 1), level+1);
+			if (second==null) second = new Node(copy(t.tetra, 2), level+1);
+		}
+
+		boolean leaf()
+		{
+			return first==null && second==null;
+		}
+
+		/* whether x,y,z is on the side of the first child */
+		boolean first(double x, double y, double z)
+		{
+			double epx = x-ex, epy = y-ey, epz = z-ez;
+			return side*
+					(epx*ecy*edz+epy*ecz*edx+epz*ecx*edy
+							-epz*ecy*edx-epy*ecx*edz-epx*ecz*edy)>0.0;
+		}
+	}
+
+	static double[] copy(double tetra[], int node)
+	{
+		double t[] = new double[TopTree.TETRA];
+		System.arraycopy(tetra, TopTree.TETRA*node, t, 0, TopTree.TETRA);
+		return t;
+	}
+
+	/* sets up and renders the view given by prop, ready to save */
+	public PlanetJ render(Properties prop)
+	{
+		PlanetJ p = new PlanetJ();
+		p.init(prop);
+		p.setup();
+		render(p);
+		return p;
+	}
+
+	/* renders p, which has been set up */
+	public void render(PlanetJ p)
+	{
+		if (p.bands>1 || !p.merge.equals("false"))
+		{
+			throw new IllegalArgumentException("A zoom session renders whole maps, not bands or merges");
+		}
+
+		int levels = (p.topTree==null ? 0 : p.topTree.levels);
+		if (!TopTree.key(p).equals(key) || levels!=base)
+		{
+			key = TopTree.key(p);
+			base = levels;
+			keys = new int[0];
+			roots = new Node[0];
+		}
+
+		long t0 = System.currentTimeMillis();
+		grow(p);
+		growTime = System.currentTimeMillis()-t0;
+		p.zoom = this;
+		try
+		{
+			p.process();
+		}
+		finally
+		{
+			p.zoom = null;
+		}
+	}
+
+	/* sorts the samples of the view down the TopTree and then the trees, */
+	/* level by level, as far as they need and p.treeCache MB allow */
+	void grow(PlanetJ p)
+	{
+		Geometry g = Geometry.get(p);
+		TopTree top = p.topTree;
+		int n = 0;
+		int size = ((p.Width+SAMPLE-1)/SAMPLE)*((p.Height+SAMPLE-1)/SAMPLE);
+		double xyz[] = new double[3*size];
+		int depth[] = new int[size], pts[] = new int[size];
+		long order[] = new long[size];
+		double q[] = new double[3];
+		for (int j=0; j<p.Height; j+=SAMPLE)
+			for (int i=0; i<p.Width; i+=SAMPLE)
+				if (g.point(i, j, q) && g.depth(i, j)-11>base)
+				{
+					System.arraycopy(q, 0, xyz, 3*n, 3);
+					depth[n] = g.depth(i, j);
+					int node = (top==null ? 0 : top.node(q[0], q[1], q[2], base));
+					order[n] = ((long)node<<32)|n;
+					n++;
+				}
+		Arrays.sort(order, 0, n);
+		for (int k=0; k<n; k++)
+			pts[k] = (int)order[k];
+
+		long budget = ((long)p.treeCache<<20)/NODE;
+		nodes = 0;
+		reused = 0;
+
+		/* the nodes of a level and the range of pts[] each holds, */
+		/* starting with a root for each TopTree node with samples enough */
+		Vector<Node> level = new Vector<Node>();
+		Vector<int[]> ranges = new Vector<int[]>();
+		Vector<Integer> newKeys = new Vector<Integer>();
+		for (int from=0, to; from<n; from=to)
+		{
+			int node = (int)(order[from]>>>32);
+			for (to=from+1; to<n && (int)(order[to]>>>32)==node; to++);
+			if (to-from<MIN_POINTS || nodes+1>budget) continue;
+
+			int k = Arrays.binarySearch(keys, node);
+			Node root;
+			if (k>=0)
+			{
+				root = roots[k];
+				reused++;
+			}
+			else root = new Node(top==null ? TopTree.top(p) : copy(top.tetra, node), base);
+			newKeys.add(node);
+			level.add(root);
+			ranges.add(new int[] { from, to });
+			nodes++;
+		}
+		keys = new int[newKeys.size()];
+		for (int k=0; k<keys.length; k++)
+			keys[k] = newKeys.get(k);
+		roots = level.toArray(new Node[level.size()]);
+
+		while (!level.isEmpty())
+		{
+			Vector<Node> next = new Vector<Node>();
+			Vector<int[]> nextRanges = new Vector<int[]>();
+
+			for (int m=0; m<level.size(); m++)
+			{
+				Node node = level.get(m);
+				int from = ranges.get(m)[0], to = ranges.get(m)[1];
+
+				/* samples that have to stop here go no further */
+				int keep = from;
+				for (int k=from; k<to; k++)
+					if (depth[pts[k]]-11>node.level) pts[keep++] = pts[k];
+				to = keep;
+
+				if (to-from<MIN_POINTS || nodes+2>budget)
+				{
+					node.first = node.second = null;
+					continue;
+				}
+
+				if (node.first!=null && node.second!=null) reused += 2;
+				else node.subdivide(p);
+
+				/* the first child's samples to the front */
+				int a = from, b = to-1;
+				while (true)
+				{
+					while (a<=b && node.first(xyz[3*pts[a]], xyz[3*pts[a]+1], xyz[3*pts[a]+2])) a++;
+					while (a<b && !node.first(xyz[3*pts[b]], xyz[3*pts[b]+1], xyz[3*pts[b]+2])) b--;
+					if (a>=b) break;
+					int t = pts[a]; pts[a] = pts[b]; pts[b] = t;
+					a++;
+					b--;
+				}
+
+				if (a==from) node.first = null;
+				else { next.add(node.first); nextRanges.add(new int[] { from, a }); nodes++; }
+				if (a==to) node.second = null;
+				else { next.add(node.second); nextRanges.add(new int[] { a, to }); nodes++; }
+			}
+			level = next;
+			ranges = nextRanges;
+		}
+	}
+
+	/* planet1() for a point of the view */
+	public double planet(PlanetJ p, double x, double y, double z, int depth)
+	{
+		TopTree top = p.topTree;
+		if (top!=null && (depth>=11 ? depth-11 : depth)<=base) return top.planet(p, x, y, z, depth);
+
+		int n = (top==null ? 0 : top.node(x, y, z, base));
+		int k = Arrays.binarySearch(keys, n);
+		p.treeSteps += base;
+		if (k<0)
+		{
+			if (top!=null) return top.planet(p, x, y, z, depth, n, base);
+			double t[] = TopTree.top(p);
+			return(p.planet(t[0],t[1],t[2],t[3], t[4],t[5],t[6],t[7],
+					t[8],t[9],t[10], t[11],t[12],t[13],
+					t[14],t[15],t[16], t[17],t[18],t[19],
+					x,y,z, depth));
+		}
+
+		Node node = roots[k];
+		while (depth-11>node.level && !node.leaf())
+		{
+			Node next = (node.first(x, y, z) ? node.first : node.second);
+			if (next==null) break;
+			node = next;
+		}
+		p.treeSteps += node.level-base;
+
+		double t[] = node.tetra;
+		return(p.planet(t[0],t[1],t[2],t[3], t[4],t[5],t[6],t[7],
+				t[8],t[9],t[10], t[11],t[12],t[13],
+				t[14],t[15],t[16], t[17],t[18],t[19],
+				x,y,z, depth-node.level));
+	}
+
+	/* Renders the view given on the command line (same options as Main) */
+	/* and zooms in on its centre by a factor of two --zoom-steps times */
+	/* (default 6), once in a session and once view by view, and reports */
+	/* the times and whether the maps agree. */
+	public static void main(String[] args) throws Exception
+	{
+		Properties prop = Main.procArgs(args);
+		if (prop.getProperty("-s")==null && prop.getProperty("seed")==null)
+		{
+			prop.setProperty("-s", Double.toString(new Random().nextDouble()));
+		}
+		int steps = Integer.parseInt(prop.getProperty("zoom-steps", "6"));
+		double scale = Double.parseDouble(prop.getProperty("-m", prop.getProperty("magnification", "1.0")));
+		prop.remove("magnification");
+
+		ZoomSession session = new ZoomSession();
+		for (int k=0; k<=steps; k++)
+		{
+			prop.setProperty("-m", Double.toString(scale*(1<<k)));
+
+			long t0 = System.currentTimeMillis();
+			PlanetJ alone = new PlanetJ();
+			alone.init(prop);
+			alone.setup();
+			alone.process();
+			long t1 = System.currentTimeMillis();
+			PlanetJ zoomed = session.render(prop);
+			long t2 = System.currentTimeMillis();
+
+			long mismatches = 0;
+			for (int i=0; i<alone.Width; i++)
+				for (int j=0; j<alone.Height; j++)
+					if (alone.col.get(i, j)!=zoomed.col.get(i, j) || alone.shades.get(i, j)!=zoomed.shades.get(i, j))
+						mismatches++;
+
+			System.out.println("x"+(scale*(1<<k))+": depth "+alone.Depth+", "+session.nodes+" nodes ("
+					+session.reused+" kept), alone "+(t1-t0)+" ms, session "+(t2-t1)+" ms (tree "+session.growTime+"), mismatches "+mismatches);
+		}
+	}
+}